@@ -14,7 +14,7 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import org.apache.log4j.Level;
 import sirius.kernel.async.Async;
-import sirius.kernel.async.Barrier;
+import sirius.kernel.async.TaskGroup;
 import sirius.kernel.commons.Strings;
 import sirius.kernel.commons.Value;
 import sirius.kernel.commons.Watch;
@@ -28,10 +28,10 @@ import sirius.kernel.nls.NLS;
 import javax.annotation.Nullable;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -159,9 +159,9 @@ public class Sirius {
             stop();
         }
         started = true;
-        Barrier barrier = Barrier.create();
+        TaskGroup<Void> startup = TaskGroup.create(Async.DEFAULT);
         for (final Lifecycle lifecycle : lifecycleParticipants.getParts()) {
-            barrier.add(Async.defaultExecutor().fork(() -> {
+            startup.run(() -> {
                 LOG.INFO("Starting: %s", lifecycle.getName());
                 try {
                     lifecycle.started();
@@ -172,10 +172,10 @@ public class Sirius {
                               .withSystemErrorMessage("Startup of: %s failed!", lifecycle.getName())
                               .handle();
                 }
-            }).execute());
+            });
         }
 
-        if (!barrier.await(1, TimeUnit.MINUTES)) {
+        if (!startup.join().await(Duration.ofMinutes(1)).isPresent()) {
             LOG.WARN("System initialization did not complete in one minute! Continuing...");
         }
     }
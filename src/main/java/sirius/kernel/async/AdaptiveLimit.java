@@ -0,0 +1,138 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async;
+
+import sirius.kernel.health.Average;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adapts the number of tasks an {@link AsyncExecutor} accepts at a time to the measured task latency.
+ * <p>
+ * This implements an AIMD (additive increase, multiplicative decrease) algorithm: Every ten completed tasks,
+ * the sliding average duration of the executor is compared to a slowly moving baseline. If the average
+ * exceeds the baseline by more than the given tolerance, the limit is reduced by 10%. Otherwise, if at least half
+ * of the limit is used, it is increased by one. The baseline only follows the measured latency while the limit isn't
+ * backing off (or has reached its lower bound). Therefore a slowdown of a downstream system quickly reduces the
+ * number of accepted tasks, so that the overload is shed early instead of piling up in the queue.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+class AdaptiveLimit {
+
+    /*
+     * Number of completed tasks between two adjustments of the limit
+     */
+    private static final int WINDOW = 10;
+
+    /*
+     * Factor applied to the limit if the latency exceeds the tolerance
+     */
+    private static final double BACKOFF = 0.9;
+
+    /*
+     * Weight of a new measurement when updating the baseline
+     */
+    private static final double SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicLong completions = new AtomicLong();
+    private volatile int limit;
+    private volatile double latency;
+    private double baseline;
+    private boolean calibrated;
+
+    /**
+     * Creates a new limit which starts at the given max value.
+     *
+     * @param minLimit  the lower bound of the limit
+     * @param maxLimit  the upper bound and initial value of the limit
+     * @param tolerance the factor by which the average latency may exceed the baseline before the limit is reduced
+     */
+    AdaptiveLimit(int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = Math.max(1d, tolerance);
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * Returns the number of tasks which may currently be in flight.
+     *
+     * @return the current limit
+     */
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the latency which was used for the last adjustment.
+     *
+     * @return the average task duration in milliseconds as seen by the last adjustment
+     */
+    double getLatency() {
+        return latency;
+    }
+
+    /**
+     * Returns the baseline against which the latency is compared.
+     *
+     * @return the long term average task duration in milliseconds
+     */
+    synchronized double getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * Records a completed task and adjusts the limit once a window of tasks has completed.
+     *
+     * @param duration the average duration of the tasks of the executor
+     * @param inFlight the number of tasks currently in flight
+     */
+    void onCompletion(Average duration, int inFlight) {
+        if (completions.incrementAndGet() % WINDOW == 0) {
+            adjust(duration.getAvg(), inFlight);
+        }
+    }
+
+    /**
+     * Adjusts the limit based on the given measurement.
+     *
+     * @param currentLatency the current average task duration in milliseconds
+     * @param inFlight       the number of tasks currently in flight
+     */
+    synchronized void adjust(double currentLatency, int inFlight) {
+        latency = currentLatency;
+        if (!calibrated) {
+            baseline = currentLatency;
+            calibrated = true;
+            return;
+        }
+        // Sub-millisecond tasks are reported as 0ms, therefore we never expect less than 1ms
+        if (currentLatency > Math.max(1d, baseline) * tolerance) {
+            limit = Math.max(minLimit, (int) (limit * BACKOFF));
+            // Keep the baseline while backing off, so that a slow down isn't mistaken as the new normal. Once the
+            // limit bottomed out, the baseline follows so that a permanent change is eventually accepted.
+            if (limit > minLimit) {
+                return;
+            }
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1);
+        }
+        baseline += SMOOTHING * (currentLatency - baseline);
+    }
+
+    @Override
+    public String toString() {
+        return limit + " (" + minLimit + ".." + maxLimit + ")";
+    }
+}
@@ -19,10 +19,13 @@ import sirius.kernel.health.Log;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 
 /**
  * Static helper for managing and scheduling asynchronous background tasks.
@@ -84,14 +87,20 @@ public class Async {
                 if (exec == null) {
                     Extension config = Extensions.getExtension("async.executor", wrapper.category);
                     exec = new AsyncExecutor(wrapper.category,
+                            AsyncExecutor.parseMode(wrapper.category, config.get("mode").asString()),
                             config.get("poolSize").asInt(10),
                             config.get("queueLength").asInt(0));
+                    if (config.get("adaptiveLimit").asBoolean(false)) {
+                        exec.enableAdaptiveLimit(config.get("minLimit").asInt(1),
+                                                 config.get("latencyTolerance").asDouble(2d));
+                    }
                     executors.put(wrapper.category, exec);
                 }
             }
         }
         wrapper.jobNumber = exec.executed.inc();
         wrapper.durationAverage = exec.duration;
+        wrapper.enqueued = System.nanoTime();
         exec.execute(wrapper);
     }
 
@@ -123,6 +132,27 @@ public class Async {
         return result;
     }
 
+    /**
+     * Creates a batcher which collects items and hands them to the given consumer in batches.
+     * <p>
+     * A batch is processed by a task of the given executor once it contains <tt>maxBatch</tt> items or once its
+     * first item waited for <tt>maxDelay</tt>. This is way cheaper than forking a task per item, if many small
+     * items are to be processed.
+     *
+     * @param category the category which implies which executor to use.
+     * @param maxBatch the max number of items per batch
+     * @param maxDelay the max duration an item waits before its batch is processed
+     * @param consumer the consumer which processes a batch of items
+     * @param <T>      the type of items being collected
+     * @return a new batcher which can be supplied with items via {@link Batcher#add(Object)}
+     */
+    public static <T> Batcher<T> batcher(String category,
+                                         int maxBatch,
+                                         Duration maxDelay,
+                                         Consumer<List<T>> consumer) {
+        return new Batcher<>(category, maxBatch, maxDelay, consumer);
+    }
+
     /**
      * Creates a new promise of the given type.
      *
@@ -175,7 +205,9 @@ public class Async {
      * Note that all values need to have the same type.
      * <p>
      * If only the completion of all promises matters in contrast to their actual result, a {@link Barrier} can also
-     * be used. This permits to wait for promises of different types.
+     * be used. This permits to wait for promises of different types. To fork a set of tasks and collect their
+     * results, a {@link TaskGroup} is the better choice, as it also limits the parallelism and cancels the remaining
+     * tasks on the first failure.
      *
      * @param list the list of promises to convert.
      * @param <V>  the type of each promise.
@@ -183,35 +215,28 @@ public class Async {
      */
     public static <V> Promise<List<V>> sequence(List<Promise<V>> list) {
         final Promise<List<V>> result = promise();
-
-        // Create a list with the correct length
-        final List<V> resultList = new ArrayList<V>();
-        for (int i = 0; i < list.size(); i++) {
-            resultList.add(null);
+        if (list.isEmpty()) {
+            result.success(Collections.emptyList());
+            return result;
         }
 
-        // Keep track when we're finished
-        final CountDownLatch latch = new CountDownLatch(list.size());
-
-        // Iterate over all promises and create a completion handler, which either forwards a failure or which placesy
-        // a successfully computed in the created result list
+        // Each handler writes into its own slot, therefore no locking is required. The last one to complete
+        // forwards the result. The atomic counter ensures that it sees all values written by the others.
+        final AtomicReferenceArray<V> values = new AtomicReferenceArray<>(list.size());
+        final AtomicInteger open = new AtomicInteger(list.size());
         int index = 0;
         for (Promise<V> promise : list) {
             final int currentIndex = index;
             promise.onComplete(new CompletionHandler<V>() {
                 @Override
                 public void onSuccess(V value) throws Exception {
-                    if (!result.isFailed()) {
-                        // onSuccess can be called from any thread -> sync on resultList...
-                        synchronized (resultList) {
-                            resultList.set(currentIndex, value);
-                        }
-
-                        // Keep track how many results we're waiting for and forward the result when we're finished.
-                        latch.countDown();
-                        if (latch.getCount() <= 0) {
-                            result.success(resultList);
+                    values.set(currentIndex, value);
+                    if (open.decrementAndGet() == 0 && !result.isFailed()) {
+                        List<V> resultList = new ArrayList<>(values.length());
+                        for (int i = 0; i < values.length(); i++) {
+                            resultList.add(values.get(i));
                         }
+                        result.success(resultList);
                     }
                 }
 
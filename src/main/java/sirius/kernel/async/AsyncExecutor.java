@@ -13,49 +13,409 @@ import sirius.kernel.commons.Strings;
 import sirius.kernel.health.Average;
 import sirius.kernel.health.Counter;
 import sirius.kernel.health.Exceptions;
+import sirius.kernel.health.Histogram;
 
-import java.util.concurrent.*;
+import javax.annotation.Nonnull;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represents an executor used by sirius to schedule background tasks.
  * <p>
  * Instances of this class are created and managed by {@link Async}. This class is only made public so it can be
  * accessed for statistical reasons like ({@link #getBlocked()} or {@link #getDropped()}.
+ * <p>
+ * Depending on the configured {@link Mode}, tasks are either executed by a fixed thread pool, a work-stealing
+ * <tt>ForkJoinPool</tt> or by a virtual thread per task. In any case, at most <tt>poolSize</tt> plus
+ * <tt>queueLength</tt> tasks are accepted at a time (unless <tt>queueLength</tt> is 0). Once this limit is reached,
+ * a task is either dropped (if it has a drop handler) or executed by the calling thread.
+ * <p>
+ * Optionally, an adaptive limit can be enabled via <tt>async.executor.[category].adaptiveLimit</tt>. This lowers
+ * the number of accepted tasks once the task duration rises (e.g. due to a slow downstream system), so that
+ * overload is shed early. The reasons why tasks were rejected are tracked per {@link RejectionReason}.
+ * <p>
+ * The queue of a fixed executor is ordered by the priority of its tasks (see
+ * {@link ExecutionBuilder#withPriority(int)}), tasks of the same priority are started in the order of their
+ * submission. Executors of other modes have no central queue and therefore ignore priorities. In any mode, a task
+ * whose deadline (see {@link ExecutionBuilder#withDeadline(java.time.Instant)}) has passed before it is started, is
+ * dropped and its promise fails with a {@link DeadlineExceededException}.
+ * <p>
+ * For each executed task, the time spent waiting for a thread and the time spent running are recorded separately
+ * (see {@link #getWaitTimes()} and {@link #getRunTimes()}). Therefore a growing queue can be told apart from slow
+ * tasks.
+ * <p>
+ * Note that this class no longer extends <tt>ThreadPoolExecutor</tt>, as it wraps the executor selected by its mode.
+ * The commonly used accessors ({@link #getQueue()}, {@link #getActiveCount()}, {@link #getCorePoolSize()},
+ * {@link #setCorePoolSize(int)} and {@link #getCompletedTaskCount()}) are still provided. However,
+ * {@link #getPoolSize()} returns the configured number of threads, and not the number of threads currently started.
  *
  * @author Andreas Haufler (aha@scireum.de)
  * @since 2013/08
  */
-public class AsyncExecutor extends ThreadPoolExecutor implements RejectedExecutionHandler {
+public class AsyncExecutor extends AbstractExecutorService {
+
+    /**
+     * Determines how the tasks of an executor are mapped to threads.
+     * <p>
+     * The mode is configured via <tt>async.executor.[category].mode</tt>.
+     */
+    public enum Mode {
+        /**
+         * Uses a fixed number of platform threads which share a single queue, ordered by the priority of the tasks
+         */
+        FIXED,
+
+        /**
+         * Uses a work-stealing <tt>ForkJoinPool</tt> with <tt>poolSize</tt> as parallelism
+         */
+        FORKJOIN,
+
+        /**
+         * Starts a virtual thread per task. On runtimes without virtual threads, {@link #FIXED} is used instead.
+         */
+        VIRTUAL
+    }
+
+    /**
+     * Enumerates the reasons why a task was not accepted by the executor.
+     * <p>
+     * A rejected task is either dropped (if it has a drop handler) or executed by the calling thread.
+     */
+    public enum RejectionReason {
+        /**
+         * All threads were busy and the queue was full
+         */
+        CAPACITY,
+
+        /**
+         * The adaptive limit of tasks in flight was reached
+         */
+        LIMIT,
+
+        /**
+         * The executor was already shut down
+         */
+        SHUTDOWN,
+
+        /**
+         * The deadline of the task passed before it was started. Such tasks are always dropped.
+         */
+        DEADLINE
+    }
+
+    /*
+     * Orders the queue of a fixed executor by descending priority and then by submission
+     */
+    private static final Comparator<Runnable> QUEUE_ORDER = (a, b) -> {
+        Task first = (Task) a;
+        Task second = (Task) b;
+        if (first.priority != second.priority) {
+            return Integer.compare(second.priority, first.priority);
+        }
+        return Long.compare(first.sequence, second.sequence);
+    };
+
+    /*
+     * Limits the number of tasks in flight. The number of permits is reduced if the pool shrinks.
+     */
+    private static class AdmissionSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = -3617469538427154203L;
+
+        private AdmissionSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /*
+     * Wraps a submitted task to track the tasks in flight and to order the queue of a fixed executor
+     */
+    private class Task implements Runnable {
+        private final Runnable command;
+        private final int priority;
+        private final long sequence;
+        private final long enqueued;
+        private final AdaptiveLimit limit;
+
+        private Task(Runnable command, AdaptiveLimit limit) {
+            this.command = command;
+            if (command instanceof ExecutionBuilder.TaskWrapper) {
+                this.priority = ((ExecutionBuilder.TaskWrapper) command).priority;
+                this.enqueued = ((ExecutionBuilder.TaskWrapper) command).enqueued;
+            } else {
+                this.priority = 0;
+                this.enqueued = System.nanoTime();
+            }
+            this.sequence = sequences.incrementAndGet();
+            this.limit = limit;
+        }
+
+        @Override
+        public void run() {
+            active.incrementAndGet();
+            long start = System.nanoTime();
+            waitTimes.add(TimeUnit.NANOSECONDS.toMicros(start - enqueued));
+            try {
+                if (isExpired(command)) {
+                    expire((ExecutionBuilder.TaskWrapper) command);
+                } else {
+                    command.run();
+                    long runTime = System.nanoTime() - start;
+                    runTimes.add(TimeUnit.NANOSECONDS.toMicros(runTime));
+                    busyTime.add(runTime);
+                }
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+                release();
+                if (limit != null) {
+                    limit.onCompletion(duration, pending.get());
+                }
+            }
+        }
+    }
 
     private String category;
+    private Mode mode;
+    private ExecutorService delegate;
+    private AdmissionSemaphore admission;
+    private volatile int poolSize;
+    private volatile int capacity;
+    private volatile AdaptiveLimit adaptiveLimit;
+    private Map<RejectionReason, Counter> rejections = new EnumMap<>(RejectionReason.class);
+    private AtomicInteger pending = new AtomicInteger();
+    private AtomicInteger active = new AtomicInteger();
+    private AtomicLong sequences = new AtomicLong();
+    private LongAdder completed = new LongAdder();
     private Counter blocked = new Counter();
     private Counter dropped = new Counter();
     protected Counter executed = new Counter();
     protected Average duration = new Average();
 
+    /*
+     * Record the wait and run times of tasks in microseconds and the total run time in nanoseconds
+     */
+    private Histogram waitTimes = new Histogram();
+    private Histogram runTimes = new Histogram();
+    private LongAdder busyTime = new LongAdder();
+
     AsyncExecutor(String category, int poolSize, int queueLength) {
-        super(poolSize,
-              poolSize,
-              10L,
-              TimeUnit.SECONDS,
-              queueLength > 0 ? new LinkedBlockingQueue<>(queueLength) : new LinkedBlockingQueue<>());
+        this(category, Mode.FIXED, poolSize, queueLength);
+    }
+
+    AsyncExecutor(String category, Mode mode, int poolSize, int queueLength) {
         this.category = category;
-        setThreadFactory(new ThreadFactoryBuilder().setNameFormat(category + "-%d").build());
-        setRejectedExecutionHandler(this);
+        this.poolSize = poolSize;
+        this.capacity = queueLength > 0 ? poolSize + queueLength : poolSize;
+        for (RejectionReason reason : RejectionReason.values()) {
+            rejections.put(reason, new Counter());
+        }
+        if (mode == Mode.VIRTUAL) {
+            this.delegate = createVirtualThreadExecutor(category);
+            if (delegate == null) {
+                Async.LOG.INFO("Virtual threads are not available. Using mode FIXED for executor '%s'", category);
+                mode = Mode.FIXED;
+            }
+        }
+        this.mode = mode;
+        if (mode == Mode.FIXED) {
+            this.delegate = new ThreadPoolExecutor(poolSize,
+                                                   poolSize,
+                                                   10L,
+                                                   TimeUnit.SECONDS,
+                                                   new PriorityBlockingQueue<>(11, QUEUE_ORDER),
+                                                   new ThreadFactoryBuilder().setNameFormat(category + "-%d")
+                                                                             .build());
+        } else if (mode == Mode.FORKJOIN) {
+            this.delegate = new ForkJoinPool(poolSize, this::newWorkerThread, null, true);
+        }
+        // None of the underlying executors has a bounded queue (a PriorityBlockingQueue cannot be bounded),
+        // therefore the number of tasks in flight is limited here
+        if (queueLength > 0) {
+            this.admission = new AdmissionSemaphore(poolSize + queueLength);
+        }
+    }
+
+    /**
+     * Parses the given mode as found in the system configuration.
+     *
+     * @param category the category of the executor (used for logging)
+     * @param mode     the name of the mode in any case
+     * @return the matching mode or {@link Mode#FIXED} if the given mode is empty or unknown
+     */
+    static Mode parseMode(String category, String mode) {
+        if (Strings.isEmpty(mode)) {
+            return Mode.FIXED;
+        }
+        try {
+            return Mode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Async.LOG.WARN("Unknown mode '%s' for executor '%s'. Using FIXED.", mode, category);
+            return Mode.FIXED;
+        }
+    }
+
+    /**
+     * Enables an adaptive limit of the tasks in flight.
+     * <p>
+     * The limit starts at <tt>poolSize + queueLength</tt> (or <tt>poolSize</tt> for an unbounded queue) which is
+     * also its upper bound.
+     *
+     * @param minLimit  the lower bound of the limit
+     * @param tolerance the factor by which the average task duration may exceed its long term average before the
+     *                  limit is reduced
+     */
+    void enableAdaptiveLimit(int minLimit, double tolerance) {
+        this.adaptiveLimit = new AdaptiveLimit(minLimit, capacity, tolerance);
+    }
+
+    /*
+     * Creates a virtual thread per task executor via reflection as this requires Java 21. Returns null if the
+     * runtime has no (or only preview) support for virtual threads.
+     */
+    private static ExecutorService createVirtualThreadExecutor(String category) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, category + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                                                    .invoke(null, factory);
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+    /*
+     * Creates a worker thread for the ForkJoinPool named like the threads of a fixed pool
+     */
+    private ForkJoinWorkerThread newWorkerThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName(category + "-" + thread.getPoolIndex());
+        return thread;
     }
 
     @Override
-    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+    public void execute(@Nonnull Runnable command) {
+        if (isExpired(command)) {
+            expire((ExecutionBuilder.TaskWrapper) command);
+            return;
+        }
+        AdaptiveLimit limit = adaptiveLimit;
+        if (limit != null && !tryIncrementPending(limit.getLimit())) {
+            rejectedExecution(command, RejectionReason.LIMIT);
+            return;
+        }
+        if (admission != null && !admission.tryAcquire()) {
+            if (limit != null) {
+                pending.decrementAndGet();
+            }
+            rejectedExecution(command, RejectionReason.CAPACITY);
+            return;
+        }
+        if (limit == null) {
+            pending.incrementAndGet();
+        }
+        try {
+            delegate.execute(new Task(command, limit));
+        } catch (RejectedExecutionException e) {
+            release();
+            rejectedExecution(command, delegate.isShutdown() ? RejectionReason.SHUTDOWN : RejectionReason.CAPACITY);
+        }
+    }
+
+    /*
+     * Determines if the given task has a deadline which has already passed
+     */
+    private boolean isExpired(Runnable command) {
+        if (!(command instanceof ExecutionBuilder.TaskWrapper)) {
+            return false;
+        }
+        Instant deadline = ((ExecutionBuilder.TaskWrapper) command).deadline;
+        return deadline != null && Instant.now().isAfter(deadline);
+    }
+
+    /*
+     * Drops a task whose deadline has passed. In contrast to overload conditions, the task is never executed by
+     * the calling thread.
+     */
+    private void expire(ExecutionBuilder.TaskWrapper wrapper) {
+        rejections.get(RejectionReason.DEADLINE).inc();
+        dropped.inc();
         try {
-            ExecutionBuilder.TaskWrapper wrapper = (ExecutionBuilder.TaskWrapper) r;
             if (wrapper.dropHandler != null) {
                 wrapper.dropHandler.run();
+            }
+        } catch (Throwable t) {
+            Exceptions.handle(Async.LOG, t);
+        }
+        wrapper.promise.fail(new DeadlineExceededException(category, wrapper.deadline));
+    }
+
+    /*
+     * Increments the number of tasks in flight unless the given limit is reached
+     */
+    private boolean tryIncrementPending(int limit) {
+        while (true) {
+            int current = pending.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (pending.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /*
+     * Marks a task as no longer in flight
+     */
+    private void release() {
+        pending.decrementAndGet();
+        if (admission != null) {
+            admission.release();
+        }
+    }
+
+    /*
+     * Handles a task which cannot be accepted, either as the executor is saturated or shut down
+     */
+    private void rejectedExecution(Runnable r, RejectionReason reason) {
+        rejections.get(reason).inc();
+        try {
+            if (r instanceof ExecutionBuilder.TaskWrapper && ((ExecutionBuilder.TaskWrapper) r).dropHandler != null) {
+                ExecutionBuilder.TaskWrapper wrapper = (ExecutionBuilder.TaskWrapper) r;
+                wrapper.dropHandler.run();
                 wrapper.promise.fail(new RejectedExecutionException());
                 dropped.inc();
             } else {
                 CallContext current = CallContext.getCurrent();
                 try {
-                    wrapper.run();
+                    r.run();
                 } finally {
                     CallContext.setCurrent(current);
                 }
@@ -66,15 +426,81 @@ public class AsyncExecutor extends ThreadPoolExecutor implements RejectedExecuti
         }
     }
 
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Nonnull
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
     @Override
     public String toString() {
-        return Strings.apply("%s - Active: %d, Queued: %d, Executed: %d, Blocked: %d, Rejected: %d",
+        AdaptiveLimit limit = adaptiveLimit;
+        return Strings.apply("%s (%s) - Active: %d, Queued: %d, Executed: %d, Blocked: %d, Rejected: %d, "
+                             + "Limit: %s (Rejections - Capacity: %d, Limit: %d, Shutdown: %d, Deadline: %d)",
                              category,
+                             mode,
                              getActiveCount(),
-                             getQueue().size(),
+                             getQueuedCount(),
                              executed.getCount(),
                              blocked.getCount(),
-                             dropped.getCount());
+                             dropped.getCount(),
+                             limit == null ? capacity : limit,
+                             getRejected(RejectionReason.CAPACITY),
+                             getRejected(RejectionReason.LIMIT),
+                             getRejected(RejectionReason.SHUTDOWN),
+                             getRejected(RejectionReason.DEADLINE));
+    }
+
+    /**
+     * Returns the number of tasks which are currently accepted at a time.
+     *
+     * @return the current adaptive limit or <tt>poolSize + queueLength</tt> if no adaptive limit is enabled. For an
+     * unbounded queue, this is <tt>poolSize</tt> without an adaptive limit, which only limits the active tasks.
+     */
+    public int getLimit() {
+        AdaptiveLimit limit = adaptiveLimit;
+        return limit == null ? capacity : limit.getLimit();
+    }
+
+    /**
+     * Determines if an adaptive limit is enabled for this executor.
+     *
+     * @return <tt>true</tt> if the number of accepted tasks adapts to the task duration, <tt>false</tt> otherwise
+     */
+    public boolean isAdaptive() {
+        return adaptiveLimit != null;
+    }
+
+    /**
+     * Returns the number of tasks which were not accepted for the given reason.
+     * <p>
+     * Each rejected task was either dropped or executed by the calling thread.
+     *
+     * @param reason the reason to check
+     * @return the number of tasks rejected for the given reason
+     */
+    public long getRejected(RejectionReason reason) {
+        return rejections.get(reason).getCount();
     }
 
     /**
@@ -86,6 +512,167 @@ public class AsyncExecutor extends ThreadPoolExecutor implements RejectedExecuti
         return category;
     }
 
+    /**
+     * Returns the mode which is effectively used by this executor.
+     *
+     * @return the mode of this executor. This might be {@link Mode#FIXED} even if {@link Mode#VIRTUAL} was
+     * configured, as virtual threads are not available on all runtimes.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the number of tasks which are currently being executed.
+     *
+     * @return the number of running tasks
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of tasks which have been accepted but are not yet being executed.
+     *
+     * @return the number of waiting tasks
+     */
+    public int getQueuedCount() {
+        return Math.max(0, pending.get() - active.get());
+    }
+
+    /**
+     * Returns the number of threads used by this executor.
+     *
+     * @return the configured pool size. For {@link Mode#VIRTUAL} this is not a limit of the threads, but used as
+     * reference to compute the utilization.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns the number of threads used by this executor.
+     * <p>
+     * As core and max pool size are always the same, this is equivalent to {@link #getPoolSize()}.
+     *
+     * @return the configured pool size
+     */
+    public int getCorePoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns the max number of threads used by this executor.
+     * <p>
+     * As core and max pool size are always the same, this is equivalent to {@link #getPoolSize()}.
+     *
+     * @return the configured pool size
+     */
+    public int getMaximumPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Changes the number of threads used by this executor.
+     * <p>
+     * Core and max pool size are always changed together. The number of accepted tasks is adjusted by the same
+     * amount, the bounds of an adaptive limit remain unchanged.
+     *
+     * @param poolSize the new number of threads
+     * @throws IllegalArgumentException      if the given size is less than one
+     * @throws UnsupportedOperationException for {@link Mode#FORKJOIN} as the parallelism of a <tt>ForkJoinPool</tt>
+     *                                       cannot be changed
+     */
+    public synchronized void setCorePoolSize(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be at least 1");
+        }
+        if (mode == Mode.FORKJOIN) {
+            throw new UnsupportedOperationException("Cannot change the pool size of a ForkJoinPool");
+        }
+        if (delegate instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) delegate;
+            if (poolSize > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(poolSize);
+                executor.setCorePoolSize(poolSize);
+            } else {
+                executor.setCorePoolSize(poolSize);
+                executor.setMaximumPoolSize(poolSize);
+            }
+        }
+        int delta = poolSize - this.poolSize;
+        this.poolSize = poolSize;
+        this.capacity += delta;
+        if (admission != null) {
+            if (delta > 0) {
+                admission.release(delta);
+            } else if (delta < 0) {
+                admission.reducePermits(-delta);
+            }
+        }
+    }
+
+    /**
+     * Returns the queue of tasks waiting for a thread.
+     * <p>
+     * Only executors of {@link Mode#FIXED} have a central queue. It contains the submitted tasks in a wrapped form
+     * and should only be used for inspection. Use {@link #getQueuedCount()} to determine the number of waiting tasks
+     * in any mode.
+     *
+     * @return the queue of a fixed executor or an empty queue for other modes
+     */
+    public BlockingQueue<Runnable> getQueue() {
+        if (delegate instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) delegate).getQueue();
+        }
+        return new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Returns the number of tasks which have completed execution.
+     * <p>
+     * In contrast to {@link #getExecuted()}, this also counts tasks submitted via the <tt>ExecutorService</tt> API.
+     *
+     * @return the number of completed tasks
+     */
+    public long getCompletedTaskCount() {
+        return completed.sum();
+    }
+
+    /**
+     * Returns the distribution of the times tasks waited until they were started.
+     * <p>
+     * This covers the time from submitting a task until a thread starts executing it. The values are recorded in
+     * microseconds. The {@link AsyncMetricProvider} resets the histogram each time the metrics are collected.
+     *
+     * @return the histogram of wait times in microseconds
+     */
+    public Histogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    /**
+     * Returns the distribution of the times tasks were running.
+     * <p>
+     * In contrast to {@link #getAverageDuration()}, this excludes the setup of the <tt>CallContext</tt> and covers
+     * all tasks, including the ones submitted via the <tt>ExecutorService</tt> API. The values are recorded in
+     * microseconds. The {@link AsyncMetricProvider} resets the histogram each time the metrics are collected.
+     *
+     * @return the histogram of run times in microseconds
+     */
+    public Histogram getRunTimes() {
+        return runTimes;
+    }
+
+    /**
+     * Returns the total time spent running tasks.
+     *
+     * @return the sum of the run times of all executed tasks in nanoseconds
+     */
+    public long getBusyTime() {
+        return busyTime.sum();
+    }
+
     /**
      * The number of tasks which were executed by this executor
      *
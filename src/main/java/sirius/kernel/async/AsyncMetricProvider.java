@@ -0,0 +1,98 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async;
+
+import com.google.common.collect.Maps;
+import sirius.kernel.commons.Tuple;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Histogram;
+import sirius.kernel.health.metrics.MetricProvider;
+import sirius.kernel.health.metrics.MetricsCollector;
+
+import java.util.Map;
+
+/**
+ * Reports the utilization of all executors known to {@link Async} as metrics.
+ * <p>
+ * Next to the active and queued tasks, the number of rejected tasks per minute is reported for each
+ * {@link AsyncExecutor.RejectionReason}, along with the current limit of executors using an adaptive limit.
+ * <p>
+ * The median and the 99th percentile of the wait and run times (see {@link AsyncExecutor#getWaitTimes()} and
+ * {@link AsyncExecutor#getRunTimes()}) cover the tasks executed since the previous run, as the histograms are reset
+ * after being reported. The utilization is the share of the time since the previous run, in which the threads of
+ * the executor were running tasks.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Register
+public class AsyncMetricProvider implements MetricProvider {
+
+    /*
+     * Contains the busy time of each executor and the System.nanoTime() at which it was recorded in the last run
+     */
+    private final Map<AsyncExecutor, Tuple<Long, Long>> lastBusyTimes = Maps.newHashMap();
+
+    @Override
+    public void gather(MetricsCollector collector) {
+        for (AsyncExecutor exec : Async.getExecutors()) {
+            String key = "async-" + exec.getCategory();
+            String prefix = "Executor " + exec.getCategory() + " - ";
+            gatherLatencies(collector, "async-wait", prefix + "Wait", exec.getWaitTimes());
+            gatherLatencies(collector, "async-run", prefix + "Run", exec.getRunTimes());
+            gatherUtilization(collector, prefix, exec);
+            collector.differentialMetric(key + "-executed",
+                                         "async-executed",
+                                         prefix + "Executed",
+                                         exec.getExecuted(),
+                                         "/min");
+            collector.metric("async-active", prefix + "Active", exec.getActiveCount(), null);
+            collector.metric("async-queued", prefix + "Queued", exec.getQueuedCount(), null);
+            collector.metric("async-duration", prefix + "Duration", exec.getAverageDuration(), "ms");
+            if (exec.isAdaptive()) {
+                collector.metric("async-limit", prefix + "Limit", exec.getLimit(), null);
+            }
+            for (AsyncExecutor.RejectionReason reason : AsyncExecutor.RejectionReason.values()) {
+                collector.differentialMetric(key + "-rejected-" + reason.name().toLowerCase(),
+                                             "async-rejected",
+                                             prefix + "Rejected (" + reason.name().toLowerCase() + ")",
+                                             exec.getRejected(reason),
+                                             "/min");
+            }
+        }
+    }
+
+    /*
+     * Reports the median and 99th percentile of the given histogram in milliseconds and resets it
+     */
+    private void gatherLatencies(MetricsCollector collector, String limitType, String title, Histogram histogram) {
+        if (histogram.getCount() > 0) {
+            collector.metric(limitType, title + " (50%)", histogram.getPercentile(50) / 1000d, "ms");
+            collector.metric(limitType, title + " (99%)", histogram.getPercentile(99) / 1000d, "ms");
+        }
+        histogram.reset();
+    }
+
+    /*
+     * Reports the share of the time since the last run, which the threads of the given executor spent running tasks
+     */
+    private void gatherUtilization(MetricsCollector collector, String prefix, AsyncExecutor exec) {
+        long now = System.nanoTime();
+        long busyTime = exec.getBusyTime();
+        Tuple<Long, Long> last = lastBusyTimes.put(exec, Tuple.create(busyTime, now));
+        if (last == null || now <= last.getSecond()) {
+            return;
+        }
+        double available = (double) (now - last.getSecond()) * Math.max(1, exec.getPoolSize());
+        collector.metric("async-utilization",
+                         prefix + "Utilization",
+                         Math.min(100d, 100d * (busyTime - last.getFirst()) / available),
+                         "%");
+    }
+}
@@ -37,6 +37,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <p>
  * This barrier can also be used in a non-blocking way, by calling {@link #asFuture()} after the last call to
  * {@link #add(Promise)}. If possible, the non-block approach should always be preferred.
+ * <p>
+ * To fork a set of tasks and to collect their results, use a {@link TaskGroup}. In contrast to a barrier, it limits
+ * the parallelism and cancels the remaining tasks once one fails.
  *
  * @author Andreas Haufler (aha@scireum.de)
  * @since 2013/08
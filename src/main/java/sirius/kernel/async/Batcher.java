@@ -0,0 +1,305 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import sirius.kernel.Lifecycle;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+import sirius.kernel.health.HandledException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects small items and processes them in batches on the executor of a given category.
+ * <p>
+ * Instead of forking a task per item, items are buffered and handed to the consumer as a list once either
+ * <tt>maxBatch</tt> items are buffered or the first buffered item waited for <tt>maxDelay</tt>. Therefore the
+ * overhead of a task (its <tt>CallContext</tt> and the handoff to the executor) is paid per batch:
+ * <pre>
+ * <code>
+ *      Batcher&lt;Document&gt; indexer = Async.batcher("index", 500, Duration.ofMillis(50), docs -&gt; bulkIndex(docs));
+ *      indexer.add(document).onSuccess(ignored -&gt; LOG.FINE("Indexed: %s", document));
+ * </code>
+ * </pre>
+ * <p>
+ * Each batch is processed by one task which runs within a new <tt>CallContext</tt>, as the items of a batch are
+ * added by different callers. The future returned for each item is completed once its batch was processed. If the
+ * consumer fails, the error is logged once and all futures of the batch fail with the resulting
+ * {@link HandledException}.
+ * <p>
+ * When the system shuts down, the pending items of all batchers are submitted (see {@link BatcherLifecycle}).
+ *
+ * @param <T> the type of items being collected
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@ParametersAreNonnullByDefault
+public class Batcher<T> {
+
+    /*
+     * Flushes batches once their max delay has passed. Flushing only submits the batch to its executor, so a single
+     * thread serves all batchers. The timer is created on demand and shut down by the BatcherLifecycle.
+     */
+    private static ScheduledThreadPoolExecutor timer;
+    private static boolean stopped;
+
+    /*
+     * Contains all batchers which are still referenced, so that their pending items can be flushed on shutdown
+     */
+    private static final Set<Batcher<?>> batchers =
+            Collections.newSetFromMap(new MapMaker().weakKeys().<Batcher<?>, Boolean>makeMap());
+
+    private final String category;
+    private final int maxBatch;
+    private final long maxDelayMillis;
+    private final Consumer<List<T>> consumer;
+
+    /*
+     * The items and futures of the current batch. Both are guarded by this.
+     */
+    private List<T> items;
+    private List<Future> futures;
+
+    /*
+     * Incremented for each batch, so that a delayed flush can detect that its batch was already flushed
+     */
+    private long batchNumber;
+
+    /*
+     * The delayed flush of the current batch. Guarded by this.
+     */
+    private ScheduledFuture<?> scheduledFlush;
+
+    Batcher(String category, int maxBatch, Duration maxDelay, Consumer<List<T>> consumer) {
+        this.category = category;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayMillis = Math.max(0, maxDelay.toMillis());
+        this.consumer = consumer;
+        batchers.add(this);
+    }
+
+    /*
+     * Returns the timer used to flush batches or null if the system is shutting down
+     */
+    @Nullable
+    private static synchronized ScheduledThreadPoolExecutor getTimer() {
+        if (stopped) {
+            return null;
+        }
+        if (timer == null) {
+            ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("batcher-timer").setDaemon(true).build();
+            timer = new ScheduledThreadPoolExecutor(1, factory);
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    /**
+     * Adds an item to the current batch.
+     * <p>
+     * If this fills up the batch, it is submitted to the executor right away. If this is the first item of a batch,
+     * the batch is scheduled to be submitted once <tt>maxDelay</tt> has passed.
+     *
+     * @param item the item to add
+     * @return a future which is completed once the batch containing the item was processed
+     */
+    @Nonnull
+    public Future add(@Nullable T item) {
+        Future future = new Future();
+        List<T> fullBatch = null;
+        List<Future> fullFutures = null;
+        ScheduledFuture<?> obsoleteFlush = null;
+        long scheduleBatch = -1;
+        synchronized (this) {
+            if (items == null) {
+                items = Lists.newArrayListWithCapacity(Math.min(maxBatch, 1024));
+                futures = Lists.newArrayListWithCapacity(Math.min(maxBatch, 1024));
+                batchNumber++;
+                scheduleBatch = batchNumber;
+            }
+            items.add(item);
+            futures.add(future);
+            if (items.size() >= maxBatch) {
+                fullBatch = items;
+                fullFutures = futures;
+                items = null;
+                futures = null;
+                obsoleteFlush = scheduledFlush;
+                scheduledFlush = null;
+                scheduleBatch = -1;
+            }
+        }
+        if (fullBatch != null) {
+            cancel(obsoleteFlush);
+            submit(fullBatch, fullFutures);
+        } else if (scheduleBatch > 0) {
+            scheduleFlush(scheduleBatch);
+        }
+        return future;
+    }
+
+    /*
+     * Schedules the given batch to be flushed once the max delay has passed. If the system is shutting down, the
+     * batch is flushed right away.
+     */
+    private void scheduleFlush(long batch) {
+        ScheduledThreadPoolExecutor currentTimer = getTimer();
+        if (currentTimer == null) {
+            flush(batch);
+            return;
+        }
+        ScheduledFuture<?> task;
+        try {
+            task = currentTimer.schedule(() -> flush(batch), maxDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The timer was shut down in the meantime...
+            Exceptions.ignore(e);
+            flush(batch);
+            return;
+        }
+        synchronized (this) {
+            if (batch == batchNumber && items != null) {
+                scheduledFlush = task;
+                return;
+            }
+        }
+        // The batch was already submitted in the meantime...
+        cancel(task);
+    }
+
+    /*
+     * Cancels the given delayed flush, as its batch was already submitted
+     */
+    private static void cancel(@Nullable ScheduledFuture<?> flush) {
+        if (flush != null) {
+            flush.cancel(false);
+        }
+    }
+
+    /**
+     * Submits the current batch to the executor, even if neither its size nor delay threshold has been reached.
+     */
+    public void flush() {
+        flush(-1);
+    }
+
+    /*
+     * Submits the current batch if it is the given one (or unconditionally, if -1 is given)
+     */
+    private void flush(long batch) {
+        List<T> batchItems;
+        List<Future> batchFutures;
+        ScheduledFuture<?> obsoleteFlush;
+        synchronized (this) {
+            if (items == null || (batch >= 0 && batch != batchNumber)) {
+                return;
+            }
+            batchItems = items;
+            batchFutures = futures;
+            items = null;
+            futures = null;
+            obsoleteFlush = scheduledFlush;
+            scheduledFlush = null;
+        }
+        cancel(obsoleteFlush);
+        submit(batchItems, batchFutures);
+    }
+
+    /*
+     * Processes the given batch on the executor
+     */
+    private void submit(List<T> batchItems, List<Future> batchFutures) {
+        Async.executor(category).start(() -> process(batchItems, batchFutures)).execute();
+    }
+
+    /*
+     * Invokes the consumer and completes the futures of the given batch
+     */
+    private void process(List<T> batchItems, List<Future> batchFutures) {
+        try {
+            consumer.accept(Collections.unmodifiableList(batchItems));
+        } catch (Throwable e) {
+            HandledException error = Exceptions.handle(Async.LOG, e);
+            for (Future future : batchFutures) {
+                future.fail(error);
+            }
+            return;
+        }
+        for (Future future : batchFutures) {
+            future.success();
+        }
+    }
+
+    /**
+     * Returns the number of items in the current batch.
+     *
+     * @return the number of items waiting to be submitted
+     */
+    public synchronized int getPendingItems() {
+        return items == null ? 0 : items.size();
+    }
+
+    /**
+     * Submits the pending items of all batchers and stops the timer, when the system shuts down.
+     * <p>
+     * Items added during or after the shutdown are submitted right away. As the executors might already be shut
+     * down, these batches are processed by the calling thread.
+     */
+    @Register
+    public static class BatcherLifecycle implements Lifecycle {
+
+        @Override
+        public void started() {
+            synchronized (Batcher.class) {
+                stopped = false;
+            }
+        }
+
+        @Override
+        public void stopped() {
+            ScheduledThreadPoolExecutor currentTimer;
+            synchronized (Batcher.class) {
+                stopped = true;
+                currentTimer = timer;
+                timer = null;
+            }
+            for (Batcher<?> batcher : batchers) {
+                batcher.flush();
+            }
+            if (currentTimer != null) {
+                currentTimer.shutdownNow();
+            }
+        }
+
+        @Override
+        public void awaitTermination() {
+            // The timer only submits batches, so there is nothing to wait for...
+        }
+
+        @Override
+        public String getName() {
+            return "batcher (Async Batch Timer)";
+        }
+    }
+}
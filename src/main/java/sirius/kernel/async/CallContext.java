@@ -57,8 +57,36 @@ public class CallContext {
      */
     public static final String MDC_PARENT = "parent";
 
+    /*
+     * Once the MDC consists of more than this number of entries (including overwritten or removed ones), it is
+     * compacted, so that long running threads which update their MDC frequently don't accumulate garbage
+     */
+    private static final int MAX_MDC_DEPTH = 32;
+
+    /*
+     * Represents an entry of the MDC. Entries are immutable and linked to the previously added entry, so that
+     * adding a value doesn't copy the existing ones. A null value marks a removed entry.
+     */
+    private static class MDCEntry {
+        private final String key;
+        private final String value;
+        private final MDCEntry previous;
+        private final int depth;
+
+        private MDCEntry(String key, @Nullable String value, @Nullable MDCEntry previous) {
+            this.key = key;
+            this.value = value;
+            this.previous = previous;
+            this.depth = previous == null ? 1 : previous.depth + 1;
+        }
+    }
+
     private static ThreadLocal<CallContext> currentContext = new ThreadLocal<>();
     private static Map<Long, CallContext> contextMap = Maps.newConcurrentMap();
+    /*
+     * Resolved once the config is available. Volatile, as it is read by all threads without any lock
+     */
+    private static volatile Boolean trackThreads = null;
     private static String nodeName = null;
     private static Counter interactionCounter = new Counter();
 
@@ -89,8 +117,32 @@ public class CallContext {
         return nodeName;
     }
 
+    /*
+     * Determines if the context of each thread is registered in the context map (see async.trackCallContexts).
+     * While booting, contexts are always tracked. If tracking turns out to be disabled, the contexts tracked so far
+     * are discarded.
+     */
+    private static boolean isTrackingThreads() {
+        Boolean result = trackThreads;
+        if (result == null) {
+            if (Sirius.getConfig() == null) {
+                return true;
+            }
+            result = Sirius.getConfig().getBoolean("async.trackCallContexts");
+            trackThreads = result;
+            if (!result) {
+                contextMap.clear();
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Returns the <tt>CallContext</tt> for the given thread or an empty optional if none is present.
+     * <p>
+     * If <tt>async.trackCallContexts</tt> is disabled, no contexts are recorded per thread and an empty optional
+     * is returned.
      *
      * @param threadId the id of the thread to fetch the <tt>CallContext</tt> for
      * @return the CallContext for the given thread wrapped as optional
@@ -166,13 +218,18 @@ public class CallContext {
     /**
      * Forks and creates a sub context which is then installed.
      * <p>
-     * All instantiated sub contexts are copied, the MDC is re-initialized.
+     * All instantiated sub contexts are shared with the new context, the MDC is re-initialized. Forking doesn't copy
+     * any data: The sub contexts are only copied once either context installs a new one.
      */
     public void forkAndInstall() {
-        CallContext newCtx = initialize(mdc.get(MDC_FLOW));
+        CallContext newCtx = new CallContext();
         newCtx.watch = watch;
-        newCtx.mdc.put(MDC_PARENT, mdc.get(TaskContext.MDC_SYSTEM));
-        newCtx.subContext.putAll(subContext);
+        newCtx.mdc = new MDCEntry(MDC_PARENT,
+                                  nullToEmpty(getMDCEntry(TaskContext.MDC_SYSTEM)),
+                                  new MDCEntry(MDC_FLOW, nullToEmpty(getMDCEntry(MDC_FLOW)), null));
+        newCtx.subContext = subContext;
+        interactionCounter.inc();
+        setCurrent(newCtx);
     }
 
     /**
@@ -182,7 +239,9 @@ public class CallContext {
      */
     public static void setCurrent(CallContext context) {
         currentContext.set(context);
-        contextMap.put(Thread.currentThread().getId(), context);
+        if (isTrackingThreads()) {
+            contextMap.put(Thread.currentThread().getId(), context);
+        }
     }
 
     /**
@@ -190,15 +249,21 @@ public class CallContext {
      */
     public static void detach() {
         currentContext.set(null);
+        // Always remove the context, as it might have been tracked while booting...
         contextMap.remove(Thread.currentThread().getId());
     }
 
-    private Map<String, String> mdc = Maps.newLinkedHashMap();
+    /*
+     * Contains the most recently added entry of the MDC. Needs to be volatile, as the MDC might be read by other
+     * threads (e.g. via getContext(threadId)).
+     */
+    private volatile MDCEntry mdc;
 
     /*
-     * Needs to be synchronized as a CallContext might be shared across several sub tasks
+     * The map itself is never modified, but replaced by a modified copy, so that it can be shared with forked
+     * contexts. Modifications are synchronized as a CallContext might be shared across several sub tasks.
      */
-    private Map<Class<?>, Object> subContext = Collections.synchronizedMap(Maps.newHashMap());
+    private volatile Map<Class<?>, Object> subContext = Collections.emptyMap();
     private Watch watch = Watch.start();
     private String lang = NLS.getDefaultLanguage();
 
@@ -208,7 +273,63 @@ public class CallContext {
      * @return a list of name-value pair representing the current mdc.
      */
     public List<Tuple<String, String>> getMDC() {
-        return Tuple.fromMap(mdc);
+        return Tuple.fromMap(getMDCMap());
+    }
+
+    /*
+     * Replays all entries of the MDC in the order in which they were added
+     */
+    private Map<String, String> getMDCMap() {
+        MDCEntry head = mdc;
+        if (head == null) {
+            return Collections.emptyMap();
+        }
+        MDCEntry[] entries = new MDCEntry[head.depth];
+        for (MDCEntry entry = head; entry != null; entry = entry.previous) {
+            entries[entry.depth - 1] = entry;
+        }
+        Map<String, String> result = Maps.newLinkedHashMap();
+        for (MDCEntry entry : entries) {
+            if (entry.value == null) {
+                result.remove(entry.key);
+            } else {
+                result.put(entry.key, entry.value);
+            }
+        }
+
+        return result;
+    }
+
+    /*
+     * Returns the current value of the given key in the MDC or null if none is present
+     */
+    @Nullable
+    private String getMDCEntry(String key) {
+        for (MDCEntry entry = mdc; entry != null; entry = entry.previous) {
+            if (entry.key.equals(key)) {
+                return entry.value;
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * Adds the given entry to the MDC, compacting it if it becomes too deep
+     */
+    private synchronized void appendToMDC(String key, @Nullable String value) {
+        MDCEntry head = mdc;
+        if (head != null && head.depth >= MAX_MDC_DEPTH) {
+            head = null;
+            for (Map.Entry<String, String> e : getMDCMap().entrySet()) {
+                head = new MDCEntry(e.getKey(), e.getValue(), head);
+            }
+        }
+        mdc = new MDCEntry(key, value, head);
+    }
+
+    private static String nullToEmpty(@Nullable String value) {
+        return value == null ? "" : value;
     }
 
     /**
@@ -218,7 +339,7 @@ public class CallContext {
      * @return the value of the mapped diagnostic context.
      */
     public Value getMDCValue(String key) {
-        return Value.of(mdc.get(key));
+        return Value.of(getMDCEntry(key));
     }
 
     /**
@@ -239,7 +360,7 @@ public class CallContext {
      * @param value the value to add to the mdc.
      */
     public void addToMDC(String key, @Nullable String value) {
-        mdc.put(key, value == null ? "" : value);
+        appendToMDC(key, nullToEmpty(value));
     }
 
     /**
@@ -248,7 +369,9 @@ public class CallContext {
      * @param key the name of the value to remove.
      */
     public void removeFromMDC(String key) {
-        mdc.remove(key);
+        if (getMDCEntry(key) != null) {
+            appendToMDC(key, null);
+        }
     }
 
     /**
@@ -266,8 +389,13 @@ public class CallContext {
         try {
             Object result = subContext.get(contextType);
             if (result == null) {
-                result = contextType.newInstance();
-                subContext.put(contextType, result);
+                synchronized (this) {
+                    result = subContext.get(contextType);
+                    if (result == null) {
+                        result = contextType.newInstance();
+                        putSubContext(contextType, result);
+                    }
+                }
             }
 
             return (C) result;
@@ -290,8 +418,18 @@ public class CallContext {
      * @param instance    the instance to set
      * @param <C>         the type of the sub-context
      */
-    public <C> void set(Class<C> contextType, C instance) {
-        subContext.put(contextType, instance);
+    public synchronized <C> void set(Class<C> contextType, C instance) {
+        putSubContext(contextType, instance);
+    }
+
+    /*
+     * Replaces the sub contexts by a copy containing the given one. Must only be called while holding the lock.
+     */
+    private void putSubContext(Class<?> contextType, Object instance) {
+        Map<Class<?>, Object> copy = Maps.newHashMapWithExpectedSize(subContext.size() + 1);
+        copy.putAll(subContext);
+        copy.put(contextType, instance);
+        subContext = copy;
     }
 
     /**
@@ -320,7 +458,7 @@ public class CallContext {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (Map.Entry<String, String> e : mdc.entrySet()) {
+        for (Map.Entry<String, String> e : getMDCMap().entrySet()) {
             sb.append(e.getKey());
             sb.append(": ");
             sb.append(e.getValue());
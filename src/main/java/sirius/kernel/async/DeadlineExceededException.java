@@ -0,0 +1,49 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async;
+
+import java.time.Instant;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Signals that a task was dropped as its deadline passed before it was started.
+ * <p>
+ * The promise returned by {@link ExecutionBuilder#execute()} fails with this exception if a deadline was given via
+ * {@link ExecutionBuilder#withDeadline(java.time.Instant)}. As this is a <tt>RejectedExecutionException</tt>,
+ * handlers which already deal with tasks dropped due to system overload also cover expired tasks.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public class DeadlineExceededException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = -3326440745423164520L;
+
+    private final Instant deadline;
+
+    /**
+     * Creates a new exception for a task of the given category and deadline.
+     *
+     * @param category the category of the executor which dropped the task
+     * @param deadline the deadline which has passed
+     */
+    public DeadlineExceededException(String category, Instant deadline) {
+        super("A task for '" + category + "' was dropped as its deadline (" + deadline + ") passed before it was started");
+        this.deadline = deadline;
+    }
+
+    /**
+     * Returns the deadline which has passed.
+     *
+     * @return the latest point in time at which the task should have been started
+     */
+    public Instant getDeadline() {
+        return deadline;
+    }
+}
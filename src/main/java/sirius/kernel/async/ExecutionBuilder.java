@@ -14,6 +14,7 @@ import sirius.kernel.health.Exceptions;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.time.Instant;
 
 /**
  * Builder pattern for forking or starting sub tasks.
@@ -25,6 +26,9 @@ import javax.annotation.ParametersAreNonnullByDefault;
  * Most of the time this builder will be used to either call {@link #fork(Runnable)} or {@link #start(Runnable)}
  * to either fork the current <tt>CallContext</tt> or to start a sub task with a new one. Also a drop handler can be
  * supplied using {@link #dropOnOverload(Runnable)} to gracefully handle system overload conditions.
+ * <p>
+ * Using {@link #withPriority(int)} a task can be started before other tasks which are waiting for the same executor.
+ * Using {@link #withDeadline(java.time.Instant)} a task is dropped, if it cannot be started in time.
  *
  * @author Andreas Haufler (aha@scireum.de)
  * @since 2013/08
@@ -43,16 +47,23 @@ public class ExecutionBuilder<R> {
         Runnable runnable;
         boolean fork;
         Runnable dropHandler;
+        int priority;
+        Instant deadline;
         CallContext parentContext;
         Future promise = Async.future();
         long jobNumber;
         Average durationAverage;
 
+        /*
+         * Contains the System.nanoTime() at which the task was handed to its executor
+         */
+        long enqueued;
+
         /**
          * Prepares the execution of this task while checking all preconditions.
          */
         void prepare() {
-            if (fork) {
+            if (fork && parentContext == null) {
                 parentContext = CallContext.getCurrent();
             }
             if (runnable == null) {
@@ -115,6 +126,24 @@ public class ExecutionBuilder<R> {
         return this;
     }
 
+    /**
+     * Specifies to fork the given CallContext while executing the given task.
+     * <p>
+     * This is used by {@link Promise} to run continuations within the context which was active when they were
+     * registered, rather than the one of the thread which completes the promise.
+     *
+     * @param parentContext the context to fork
+     * @param task          the task to execute.
+     * @return this for fluent builder calls.
+     */
+    @CheckReturnValue
+    ExecutionBuilder<R> forkFrom(CallContext parentContext, Runnable task) {
+        wrapper.runnable = task;
+        wrapper.fork = true;
+        wrapper.parentContext = parentContext;
+        return this;
+    }
+
     /**
      * Specifies to create a new CallContext while executing the given task.
      * <p>
@@ -145,6 +174,48 @@ public class ExecutionBuilder<R> {
         return this;
     }
 
+    /**
+     * Specifies the priority of the task.
+     * <p>
+     * If all threads of the executor are busy, waiting tasks with a higher priority are started first. Tasks with
+     * the same priority are started in the order of their submission. Note that only executors using the mode
+     * <tt>fixed</tt> have a queue which can be ordered.
+     *
+     * @param priority the priority of the task. The default priority is 0, higher values are started earlier.
+     * @return this for fluent builder calls.
+     */
+    @CheckReturnValue
+    public ExecutionBuilder<R> withPriority(int priority) {
+        wrapper.priority = priority;
+        return this;
+    }
+
+    /**
+     * Specifies the latest point in time at which the task must be started.
+     * <p>
+     * If the deadline has passed before the task is started, it is dropped: The drop handler (if given via
+     * {@link #dropOnOverload(Runnable)}) is invoked and the returned promise fails with a
+     * {@link DeadlineExceededException}. In contrast to overload conditions, such a task is never executed by the
+     * calling thread.
+     *
+     * @param deadline the latest point in time at which the task is started
+     * @return this for fluent builder calls.
+     */
+    @CheckReturnValue
+    public ExecutionBuilder<R> withDeadline(Instant deadline) {
+        wrapper.deadline = deadline;
+        return this;
+    }
+
+    /*
+     * Ignores all failures of the returned promise, so that a dropped task isn't logged as error. This is used by
+     * callers which handle all errors themselves and retry dropped tasks (see Pipeline).
+     */
+    ExecutionBuilder<R> ignoreFailures() {
+        wrapper.promise.onFailure(Exceptions::ignore);
+        return this;
+    }
+
     /**
      * Creates and submits a task based on the made specifications
      *
@@ -0,0 +1,456 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Processes a stream of items by a sequence of stages, each running on the executor of a given category.
+ * <p>
+ * A pipeline reads items from a source, passes them through one or more transforming stages and finally hands them
+ * to a consumer:
+ * <pre>
+ * <code>
+ *      Pipeline.from(lines)
+ *              .map("parser", 4, line -&gt; parse(line))
+ *              .mapUnordered("geocoder", 16, address -&gt; lookup(address))
+ *              .forEach("writer", result -&gt; write(result))
+ *              .onSuccess(count -&gt; LOG.INFO("Processed %d lines", count));
+ * </code>
+ * </pre>
+ * <p>
+ * Each stage processes up to <tt>parallelism</tt> items at a time and holds at most <tt>parallelism</tt> plus the
+ * buffer size (see {@link #withBufferSize(int)}) items. Items are only pulled from the source or handed to the next
+ * stage while it has capacity left. Therefore a fast producer is slowed down to the pace of the slowest stage
+ * instead of filling up the memory. This is the same demand driven contract as specified by reactive streams.
+ * <p>
+ * A stage created via {@link #map(String, int, Function)} emits its results in the order in which it received the
+ * items. A stage created via {@link #mapUnordered(String, int, Function)} emits each result as soon as it is
+ * computed. The consumer passed to {@link #forEach(String, Consumer)} is invoked by one thread at a time.
+ * <p>
+ * The pipeline stops as soon as a stage throws an exception, {@link #cancel()} is called or the {@link TaskContext}
+ * of the thread which created the pipeline is no longer active. Stages can check {@link TaskContext#isActive()} to
+ * stop long running computations.
+ *
+ * @param <T> the type of items emitted by the last stage
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@ParametersAreNonnullByDefault
+public class Pipeline<T> {
+
+    /*
+     * Default number of items buffered by each stage in addition to the ones being processed
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 16;
+
+    /*
+     * Wraps an item along with its position within the input of a stage
+     */
+    private static class Item {
+        private final long position;
+        private final Object value;
+
+        private Item(long position, Object value) {
+            this.position = position;
+            this.value = value;
+        }
+    }
+
+    /*
+     * Represents a stage along with the items it currently holds. All fields are guarded by the pipeline.
+     */
+    private static class Stage {
+        private final String category;
+        private final int parallelism;
+        private final int capacity;
+        private final boolean ordered;
+        private final Function<Object, Object> function;
+        private final Deque<Item> input = new ArrayDeque<>();
+        private final TreeMap<Long, Item> completed = Maps.newTreeMap();
+        private final Deque<Item> completedUnordered = new ArrayDeque<>();
+        private long nextPosition;
+        private long nextRelease;
+        private int running;
+        private int size;
+
+        private Stage(String category,
+                      int parallelism,
+                      int bufferSize,
+                      boolean ordered,
+                      Function<Object, Object> function) {
+            this.category = category;
+            this.parallelism = Math.max(1, parallelism);
+            this.capacity = this.parallelism + Math.max(0, bufferSize);
+            this.ordered = ordered;
+            this.function = function;
+        }
+
+        private void accept(Object value) {
+            input.add(new Item(nextPosition++, value));
+            size++;
+        }
+
+        private void complete(Item item) {
+            running--;
+            if (ordered) {
+                completed.put(item.position, item);
+            } else {
+                completedUnordered.add(item);
+            }
+        }
+
+        private Item release() {
+            Item result = ordered ? completed.remove(nextRelease) : completedUnordered.poll();
+            if (result != null) {
+                nextRelease++;
+                size--;
+            }
+            return result;
+        }
+    }
+
+    private final Iterator<?> source;
+    private final List<Stage> stages = Lists.newArrayList();
+    private final TaskContext taskContext;
+    private final Promise<Long> result = Async.promise();
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private boolean sourceExhausted;
+    private boolean pulling;
+    private boolean started;
+    private volatile boolean done;
+    private long processed;
+
+    private Pipeline(Iterator<?> source) {
+        this.source = source;
+        this.taskContext = TaskContext.get();
+    }
+
+    /**
+     * Creates a new pipeline which reads its items from the given iterator.
+     * <p>
+     * The iterator is only accessed by one thread at a time, but not necessarily always by the same one. As it is
+     * accessed without holding any lock, a blocking source (e.g. a database cursor) only blocks the thread pulling
+     * the next item, but not the stages completing their items.
+     *
+     * @param source the source of all items
+     * @param <T>    the type of the items
+     * @return a new pipeline without any stages
+     */
+    @Nonnull
+    public static <T> Pipeline<T> from(Iterator<T> source) {
+        return new Pipeline<>(source);
+    }
+
+    /**
+     * Creates a new pipeline which reads its items from the given collection or iterable.
+     *
+     * @param source the source of all items
+     * @param <T>    the type of the items
+     * @return a new pipeline without any stages
+     */
+    @Nonnull
+    public static <T> Pipeline<T> from(Iterable<T> source) {
+        return new Pipeline<>(source.iterator());
+    }
+
+    /**
+     * Specifies the number of items buffered by each subsequently added stage in addition to the ones being
+     * processed.
+     *
+     * @param bufferSize the number of items to buffer per stage
+     * @return <tt>this</tt> for fluent method chaining
+     */
+    @Nonnull
+    public Pipeline<T> withBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Adds a stage which transforms each item and emits the results in the order of the items.
+     *
+     * @param category    the category of the executor which runs the stage
+     * @param parallelism the max number of items transformed in parallel
+     * @param function    the transformation to apply
+     * @param <O>         the type of the transformed items
+     * @return the pipeline emitting the transformed items
+     */
+    @Nonnull
+    public <O> Pipeline<O> map(String category, int parallelism, Function<T, O> function) {
+        return addStage(category, parallelism, true, function);
+    }
+
+    /**
+     * Adds a stage which transforms each item and emits each result as soon as it is computed.
+     *
+     * @param category    the category of the executor which runs the stage
+     * @param parallelism the max number of items transformed in parallel
+     * @param function    the transformation to apply
+     * @param <O>         the type of the transformed items
+     * @return the pipeline emitting the transformed items
+     */
+    @Nonnull
+    public <O> Pipeline<O> mapUnordered(String category, int parallelism, Function<T, O> function) {
+        return addStage(category, parallelism, false, function);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <O> Pipeline<O> addStage(String category, int parallelism, boolean ordered, Function<T, O> function) {
+        if (started) {
+            throw new IllegalStateException("Cannot add a stage to a running pipeline.");
+        }
+        stages.add(new Stage(category, parallelism, bufferSize, ordered, (Function<Object, Object>) function));
+        return (Pipeline<O>) this;
+    }
+
+    /**
+     * Starts the pipeline and hands each item to the given consumer, in the order emitted by the last stage.
+     *
+     * @param category the category of the executor which invokes the consumer
+     * @param consumer the consumer to supply with all items
+     * @return a promise for the number of consumed items, which fails if a stage fails or the pipeline is cancelled
+     */
+    @Nonnull
+    public Promise<Long> forEach(String category, Consumer<T> consumer) {
+        addStage(category, 1, true, value -> {
+            consumer.accept(value);
+            return null;
+        });
+        started = true;
+        pump();
+        return result;
+    }
+
+    /**
+     * Cancels the pipeline.
+     * <p>
+     * No further items are read or processed. The promise returned by {@link #forEach(String, Consumer)} fails
+     * with a <tt>CancellationException</tt>.
+     */
+    public void cancel() {
+        fail(new CancellationException("The pipeline was cancelled."));
+    }
+
+    /**
+     * Determines if the pipeline is still running.
+     *
+     * @return <tt>true</tt> if the pipeline has been started and neither completed, failed nor was cancelled
+     */
+    public boolean isActive() {
+        return started && !done && taskContext.isActive();
+    }
+
+    /*
+     * Fails the pipeline unless it is already completed
+     */
+    private void fail(Throwable error) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+        }
+        result.fail(error);
+    }
+
+    /*
+     * Moves items through the pipeline as far as the capacities of the stages permit and starts all items which
+     * can be processed. The tasks are submitted after releasing the lock, as an overloaded executor might reject
+     * them.
+     * <p>
+     * Only one thread at a time pulls items from the source. This is done outside of the lock, one item per
+     * iteration, so that the items can be started immediately. If all tasks of the pipeline were rejected by
+     * overloaded executors, an item is processed by the calling thread, to ensure progress. This is also done
+     * iteratively, so that the stack depth remains bounded.
+     */
+    private void pump() {
+        if (!taskContext.isActive()) {
+            cancel();
+        }
+        while (true) {
+            List<Runnable> tasks = Lists.newArrayList();
+            boolean pull;
+            boolean completed;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                moveItems(tasks);
+                Stage first = stages.get(0);
+                pull = !pulling && !sourceExhausted && first.size < first.capacity;
+                if (pull) {
+                    pulling = true;
+                }
+                completed = sourceExhausted && !pulling && isEmpty();
+                if (completed) {
+                    done = true;
+                }
+            }
+            if (completed) {
+                result.success(processed);
+                return;
+            }
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            if (pull) {
+                pullItem();
+            } else if (!processStalledItem()) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Reads the next item from the source and hands it to the first stage
+     */
+    private void pullItem() {
+        try {
+            boolean exhausted = !source.hasNext();
+            Object next = exhausted ? null : source.next();
+            synchronized (this) {
+                pulling = false;
+                if (exhausted) {
+                    sourceExhausted = true;
+                } else {
+                    stages.get(0).accept(next);
+                }
+            }
+        } catch (Throwable e) {
+            synchronized (this) {
+                pulling = false;
+            }
+            fail(e);
+        }
+    }
+
+    /*
+     * Processes an item in the calling thread if no task of the pipeline is in flight, as all were rejected.
+     * Returns false if there is no such item or the pipeline stopped.
+     */
+    private boolean processStalledItem() {
+        Stage stage = null;
+        Item item = null;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            for (Stage candidate : stages) {
+                if (candidate.running > 0) {
+                    return false;
+                }
+                if (stage == null && !candidate.input.isEmpty()) {
+                    stage = candidate;
+                }
+            }
+            if (stage == null) {
+                return false;
+            }
+            item = stage.input.poll();
+            stage.running++;
+        }
+        return execute(stage, item);
+    }
+
+    /*
+     * Fills each stage from its predecessor, starting at the end of the pipeline, so that released capacity is
+     * propagated upstream. The first stage is filled by pullItem.
+     */
+    private void moveItems(List<Runnable> tasks) {
+        Stage last = stages.get(stages.size() - 1);
+        while (last.release() != null) {
+            processed++;
+        }
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            Stage stage = stages.get(i);
+            while (i > 0 && stage.size < stage.capacity) {
+                Item item = stages.get(i - 1).release();
+                if (item == null) {
+                    break;
+                }
+                stage.accept(item.value);
+            }
+            while (stage.running < stage.parallelism && !stage.input.isEmpty()) {
+                Item item = stage.input.poll();
+                stage.running++;
+                tasks.add(() -> Async.executor(stage.category)
+                                     .fork(() -> process(stage, item))
+                                     .dropOnOverload(() -> requeue(stage, item))
+                                     .ignoreFailures()
+                                     .execute());
+            }
+        }
+    }
+
+    /*
+     * Puts an item which was rejected by an overloaded executor back into the input of its stage
+     */
+    private synchronized void requeue(Stage stage, Item item) {
+        stage.running--;
+        stage.input.addFirst(item);
+    }
+
+    /*
+     * Determines if all stages are empty
+     */
+    private boolean isEmpty() {
+        for (Stage stage : stages) {
+            if (stage.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Applies the function of the given stage to the given item and moves the pipeline forward
+     */
+    private void process(Stage stage, Item item) {
+        if (execute(stage, item)) {
+            pump();
+        }
+    }
+
+    /*
+     * Applies the function of the given stage to the given item. Returns false if the pipeline stopped.
+     */
+    private boolean execute(Stage stage, Item item) {
+        if (done) {
+            return false;
+        }
+        if (!TaskContext.get().isActive()) {
+            cancel();
+            return false;
+        }
+        Object value;
+        try {
+            value = stage.function.apply(item.value);
+        } catch (Throwable e) {
+            fail(e);
+            return false;
+        }
+        synchronized (this) {
+            stage.complete(new Item(item.position, value));
+        }
+        return true;
+    }
+}
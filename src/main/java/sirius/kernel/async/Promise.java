@@ -9,15 +9,22 @@
 package sirius.kernel.async;
 
 import sirius.kernel.commons.Callback;
-import sirius.kernel.commons.ValueHolder;
 import sirius.kernel.health.Exceptions;
 import sirius.kernel.health.HandledException;
 import sirius.kernel.health.Log;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Function;
 
 /**
@@ -31,16 +38,67 @@ import java.util.function.Function;
  * Since promises can be chained ({@link #chain(Promise)}, {@link #failChain(Promise, sirius.kernel.commons.Callback)})
  * or aggregated ({@link Async#sequence(java.util.List)}, {@link Barrier}) complex computations can be glued
  * together using simple components.
+ * <p>
+ * A promise is thread-safe. Its whole state (the handlers registered while it is pending or its result once it
+ * is completed) is kept in a single field which is only changed by atomic compare and set operations. Therefore
+ * a promise is completed exactly once and each handler is notified exactly once, no matter which threads race
+ * to complete it or to register handlers. Neither completing a promise nor registering a handler takes a lock.
+ * <p>
+ * By default, handlers are invoked by the thread which completes the promise. Continuations like
+ * {@link #mapOn(String, java.util.function.Function)} are instead dispatched to the executor of the given category
+ * and run within a fork of the <tt>CallContext</tt> which was active when they were registered. Long chains of
+ * synchronous continuations can be protected against stack overflows via {@link #trampoline()}.
  *
  * @author Andreas Haufler (aha@scireum.de)
  * @since 2013/08
  */
 public class Promise<V> {
 
-    private ValueHolder<V> value;
-    private Throwable failure;
-    private boolean hasFailureHandler;
-    private List<CompletionHandler<V>> handlers = new ArrayList<CompletionHandler<V>>(1);
+    /*
+     * Represents the outcome of a completed promise
+     */
+    private static final class Result {
+        private final Object value;
+        private final Throwable failure;
+
+        private Result(Object value, Throwable failure) {
+            this.value = value;
+            this.failure = failure;
+        }
+    }
+
+    /*
+     * An element of the stack of handlers which were registered while the promise was pending
+     */
+    private static final class Handlers<V> {
+        private final CompletionHandler<V> handler;
+        private final Handlers<V> next;
+
+        private Handlers(CompletionHandler<V> handler, Handlers<V> next) {
+            this.handler = handler;
+            this.next = next;
+        }
+    }
+
+    /*
+     * Contains either null (pending without handlers), Handlers (pending) or Result (completed). This is only
+     * modified via STATE so that the transition to Result happens exactly once.
+     */
+    private volatile Object state;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Promise, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Object.class, "state");
+
+    private volatile boolean hasFailureHandler;
+
+    private volatile boolean trampolined;
+
+    /*
+     * Contains the notifications deferred by trampolined promises while the current thread is already notifying
+     * the handlers of another promise. Null if no notification is in progress.
+     */
+    private static final ThreadLocal<Deque<Runnable>> PENDING_NOTIFICATIONS = new ThreadLocal<>();
 
     /**
      * Returns the value of the promise or <tt>null</tt> if not completed yet.
@@ -48,22 +106,102 @@ public class Promise<V> {
      * @return the value of the promised computation. This method will not block, so <tt>null</tt>  is returned if
      *         the computation has not finished (or failed) yet.
      */
+    @SuppressWarnings("unchecked")
     public V get() {
-        return value != null ? value.get() : null;
+        Object current = state;
+        return current instanceof Result ? (V) ((Result) current).value : null;
     }
 
     /**
      * Marks the promise as successful and completed with the given value.
+     * <p>
+     * If the promise is already completed, the given value is ignored.
      *
      * @param value the value to be used as promised result.
      */
     public void success(@Nullable final V value) {
-        this.value = new ValueHolder<V>(value);
-        for (final CompletionHandler<V> handler : handlers) {
+        Object previous = complete(new Result(value, null));
+        if (previous instanceof Result) {
+            Async.LOG.FINE("Ignoring a value for an already completed promise: %s", value);
+            return;
+        }
+        for (Handlers<V> node = reverse(previous); node != null; node = node.next) {
+            notifySuccess(value, node.handler);
+        }
+    }
+
+    /*
+     * Atomically replaces the pending state by the given result. Returns the replaced state or the current result
+     * if the promise was already completed.
+     */
+    private Object complete(Result result) {
+        while (true) {
+            Object current = state;
+            if (current instanceof Result || STATE.compareAndSet(this, current, result)) {
+                return current;
+            }
+        }
+    }
+
+    /*
+     * Reverses the given stack of handlers, so that they are notified in the order of their registration
+     */
+    @SuppressWarnings("unchecked")
+    private Handlers<V> reverse(@Nullable Object pending) {
+        Handlers<V> result = null;
+        for (Handlers<V> node = (Handlers<V>) pending; node != null; node = node.next) {
+            result = new Handlers<>(node.handler, result);
+        }
+        return result;
+    }
+
+    /*
+     * Notifies the given handler about a successful completion, either directly or via the trampoline
+     */
+    private void notifySuccess(final V value, final CompletionHandler<V> handler) {
+        if (trampolined) {
+            bounce(() -> completeHandler(value, handler));
+        } else {
             completeHandler(value, handler);
         }
     }
 
+    /*
+     * Notifies the given handler about a failure, either directly or via the trampoline
+     */
+    private void notifyFailure(final Throwable exception, final CompletionHandler<V> handler) {
+        if (trampolined) {
+            bounce(() -> failHandler(exception, handler));
+        } else {
+            failHandler(exception, handler);
+        }
+    }
+
+    /*
+     * Runs the given notification unless the current thread is already notifying handlers. In this case the
+     * notification is queued and run by the outermost call once its notification returned. Therefore the stack
+     * depth stays constant, no matter how many promises are completed by each other.
+     */
+    private static void bounce(Runnable notification) {
+        Deque<Runnable> pending = PENDING_NOTIFICATIONS.get();
+        if (pending != null) {
+            pending.addLast(notification);
+            return;
+        }
+        pending = new ArrayDeque<>();
+        PENDING_NOTIFICATIONS.set(pending);
+        try {
+            notification.run();
+            Runnable next = pending.pollFirst();
+            while (next != null) {
+                next.run();
+                next = pending.pollFirst();
+            }
+        } finally {
+            PENDING_NOTIFICATIONS.remove();
+        }
+    }
+
     /*
      * Invokes the onSuccess method of given CompletionHandler.
      */
@@ -77,18 +215,24 @@ public class Promise<V> {
 
     /**
      * Marks the promise as failed due to the given error.
+     * <p>
+     * If the promise is already completed, the given error is only logged.
      *
      * @param exception the error to be used as reason for failure.
      */
     public void fail(@Nonnull final Throwable exception) {
-        this.failure = exception;
+        Object previous = complete(new Result(null, exception));
+        if (previous instanceof Result) {
+            Exceptions.handle(Async.LOG, exception);
+            return;
+        }
         if (!hasFailureHandler) {
             Exceptions.handle(Async.LOG, exception);
         } else if (Async.LOG.isFINE() && !(exception instanceof HandledException)) {
             Async.LOG.FINE(Exceptions.createHandled().error(exception));
         }
-        for (final CompletionHandler<V> handler : handlers) {
-            failHandler(exception, handler);
+        for (Handlers<V> node = reverse(previous); node != null; node = node.next) {
+            notifyFailure(exception, node.handler);
         }
     }
 
@@ -118,7 +262,7 @@ public class Promise<V> {
      * @return <tt>true</tt> if the promise failed, <tt>false</tt> otherwise.
      */
     public boolean isFailed() {
-        return failure != null;
+        return getFailure() != null;
     }
 
     /**
@@ -127,7 +271,8 @@ public class Promise<V> {
      * @return <tt>true</tt> if the promise was successfully completed, <tt>false</tt> otherwise.
      */
     public boolean isSuccessful() {
-        return value != null;
+        Object current = state;
+        return current instanceof Result && ((Result) current).failure == null;
     }
 
     /**
@@ -137,7 +282,8 @@ public class Promise<V> {
      *         completed yet.
      */
     public Throwable getFailure() {
-        return failure;
+        Object current = state;
+        return current instanceof Result ? ((Result) current).failure : null;
     }
 
     /**
@@ -150,7 +296,7 @@ public class Promise<V> {
      */
     @Nonnull
     public <X> Promise<X> map(@Nonnull final Function<V, X> mapper) {
-        final Promise<X> result = new Promise<X>();
+        final Promise<X> result = derive();
         onComplete(new CompletionHandler<V>() {
             @Override
             public void onSuccess(V value) throws Exception {
@@ -180,7 +326,7 @@ public class Promise<V> {
      */
     @Nonnull
     public <X> Promise<X> flatMap(@Nonnull final Function<V, Promise<X>> mapper) {
-        final Promise<X> result = new Promise<X>();
+        final Promise<X> result = derive();
         onComplete(new CompletionHandler<V>() {
             @Override
             public void onSuccess(V value) throws Exception {
@@ -200,6 +346,145 @@ public class Promise<V> {
         return result;
     }
 
+    /**
+     * Like {@link #map(java.util.function.Function)} but invokes the mapper on the executor of the given category.
+     * <p>
+     * The mapper runs within a fork of the <tt>CallContext</tt> which is active while calling this method. Therefore
+     * a slow mapper neither blocks the thread which completes this promise nor loses the context of the caller.
+     * Failures of this promise are forwarded directly, without involving the executor.
+     *
+     * @param category the category of the executor to run the mapper on
+     * @param mapper   the mapper to transform the promised value of this promise.
+     * @param <X>      the resulting type of the mapper
+     * @return a new promise which will be either contain the mapped value or which fails if either this promise fails
+     *         or if the mapper throws an exception.
+     */
+    @Nonnull
+    public <X> Promise<X> mapOn(@Nonnull String category, @Nonnull final Function<V, X> mapper) {
+        final Promise<X> result = derive();
+        final CallContext context = CallContext.getCurrent();
+        onComplete(new CompletionHandler<V>() {
+            @Override
+            public void onSuccess(V value) throws Exception {
+                dispatch(category, context, () -> {
+                    try {
+                        result.success(mapper.apply(value));
+                    } catch (Throwable throwable) {
+                        result.fail(throwable);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                result.fail(throwable);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Like {@link #flatMap(java.util.function.Function)} but invokes the mapper on the executor of the given
+     * category.
+     * <p>
+     * The mapper runs within a fork of the <tt>CallContext</tt> which is active while calling this method.
+     * Failures of this promise are forwarded directly, without involving the executor.
+     *
+     * @param category the category of the executor to run the mapper on
+     * @param mapper   the mapper to transform the promised value of this promise.
+     * @param <X>      the resulting type of the mapper
+     * @return a new promise which will be either contain the mapped value or which fails if either this promise fails
+     *         or if the mapper throws an exception.
+     */
+    @Nonnull
+    public <X> Promise<X> flatMapOn(@Nonnull String category, @Nonnull final Function<V, Promise<X>> mapper) {
+        final Promise<X> result = derive();
+        final CallContext context = CallContext.getCurrent();
+        onComplete(new CompletionHandler<V>() {
+            @Override
+            public void onSuccess(V value) throws Exception {
+                dispatch(category, context, () -> {
+                    try {
+                        mapper.apply(value).chain(result);
+                    } catch (Throwable throwable) {
+                        result.fail(throwable);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                result.fail(throwable);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Adds a completion handler to this promise which is invoked on the executor of the given category.
+     * <p>
+     * The handler runs within a fork of the <tt>CallContext</tt> which is active while calling this method. If the
+     * executor is saturated, the handler is run by the thread completing the promise, as any other task submitted
+     * to an overloaded executor without a drop handler.
+     *
+     * @param category the category of the executor to notify the handler on
+     * @param handler  the handler to be notified once the promise is completed.
+     * @return <tt>this</tt> for fluent method chaining
+     */
+    @Nonnull
+    public Promise<V> onCompleteOn(@Nonnull String category, @Nonnull final CompletionHandler<V> handler) {
+        final CallContext context = CallContext.getCurrent();
+        return onComplete(new CompletionHandler<V>() {
+            @Override
+            public void onSuccess(V value) throws Exception {
+                dispatch(category, context, () -> completeHandler(value, handler));
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) throws Exception {
+                dispatch(category, context, () -> failHandler(throwable, handler));
+            }
+        });
+    }
+
+    /*
+     * Runs the given continuation on the executor of the given category within a fork of the given context
+     */
+    private static void dispatch(String category, CallContext context, Runnable continuation) {
+        Async.executor(category).forkFrom(context, continuation).execute();
+    }
+
+    /**
+     * Notifies the handlers of this promise and of all promises derived from it via a trampoline.
+     * <p>
+     * Without trampolining, a handler which completes another promise (as done by {@link #map(Function)},
+     * {@link #flatMap(Function)} and their executor variants) notifies the handlers of that promise within its own
+     * stack frame. Therefore a long chain of continuations which complete synchronously can overflow the stack.
+     * With trampolining enabled, notifications issued while the current thread is already notifying handlers are
+     * queued and processed one after another by the outermost notification.
+     * <p>
+     * Note that this only defers the notification of nested handlers. Once {@link #success(Object)} or
+     * {@link #fail(Throwable)} returns to a caller outside of any handler, all handlers have been notified.
+     *
+     * @return <tt>this</tt> for fluent method chaining
+     */
+    @Nonnull
+    public Promise<V> trampoline() {
+        trampolined = true;
+        return this;
+    }
+
+    /*
+     * Creates a new promise for a continuation of this one, which inherits the trampolining setting
+     */
+    private <X> Promise<X> derive() {
+        Promise<X> result = new Promise<>();
+        result.trampolined = trampolined;
+        return result;
+    }
+
     /**
      * Chains this promise to the given one.
      * <p>
@@ -286,19 +571,154 @@ public class Promise<V> {
     @Nonnull
     public Promise<V> onComplete(@Nonnull CompletionHandler<V> handler) {
         if (handler != null) {
-            if (isSuccessful()) {
-                completeHandler(get(), handler);
-            } else if (isFailed()) {
-                failHandler(getFailure(), handler);
-            } else {
-                this.handlers.add(handler);
-            }
             hasFailureHandler = true;
+            register(handler);
         }
 
         return this;
     }
 
+    /*
+     * Pushes the given handler onto the stack of pending handlers or invokes it immediately if the promise is
+     * already completed. In contrast to onComplete, this doesn't count as failure handler.
+     */
+    @SuppressWarnings("unchecked")
+    private void register(CompletionHandler<V> handler) {
+        while (true) {
+            Object current = state;
+            if (current instanceof Result) {
+                Result result = (Result) current;
+                if (result.failure == null) {
+                    notifySuccess((V) result.value, handler);
+                } else {
+                    notifyFailure(result.failure, handler);
+                }
+                return;
+            }
+            if (STATE.compareAndSet(this, current, new Handlers<>(handler, (Handlers<V>) current))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until the promise is completed or the given timeout expires.
+     * <p>
+     * The calling thread is parked while waiting. If the promise failed, the failure is handled as usual (logged
+     * if no other failure handler is present) and an empty optional is returned.
+     *
+     * @param timeout the max duration to wait
+     * @return the value of the promise or an empty optional if the promise failed, did not complete in time or
+     * was completed with <tt>null</tt>
+     */
+    @Nonnull
+    public Optional<V> await(@Nonnull Duration timeout) {
+        if (!awaitCompletion(timeout)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(get());
+    }
+
+    /**
+     * Waits until the promise is completed and returns its value.
+     * <p>
+     * In contrast to {@link #await(java.time.Duration)} this reports a failure or timeout as exception.
+     *
+     * @param timeout the max duration to wait
+     * @return the value of the promise (which might be <tt>null</tt>)
+     * @throws HandledException if the promise failed or did not complete within the given timeout
+     */
+    @Nullable
+    public V awaitOrFail(@Nonnull Duration timeout) {
+        if (!awaitCompletion(timeout)) {
+            throw Exceptions.createHandled()
+                            .withSystemErrorMessage("The promise was not completed within %s", timeout)
+                            .handle();
+        }
+        if (isFailed()) {
+            throw Exceptions.createHandled().error(getFailure()).handle();
+        }
+        return get();
+    }
+
+    /*
+     * Parks the calling thread until the promise is completed or the timeout expires. Returns true if the promise
+     * is completed.
+     */
+    private boolean awaitCompletion(Duration timeout) {
+        if (isCompleted()) {
+            return true;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        register(new CompletionHandler<V>() {
+            @Override
+            public void onSuccess(@Nullable V value) throws Exception {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(@Nonnull Throwable throwable) throws Exception {
+                latch.countDown();
+            }
+        });
+        try {
+            return latch.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return isCompleted();
+        }
+    }
+
+    /**
+     * Creates a <tt>CompletableFuture</tt> which is completed along with this promise.
+     * <p>
+     * This permits to use the promise with APIs of the JDK or other libraries. Note that the returned future
+     * counts as failure handler, therefore failures of this promise are no longer logged automatically.
+     *
+     * @return a new future which is completed with the value or failure of this promise
+     */
+    @Nonnull
+    public CompletableFuture<V> toCompletableFuture() {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        onComplete(new CompletionHandler<V>() {
+            @Override
+            public void onSuccess(@Nullable V value) throws Exception {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(@Nonnull Throwable throwable) throws Exception {
+                result.completeExceptionally(throwable);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Creates a promise which is completed along with the given <tt>CompletionStage</tt>.
+     * <p>
+     * A <tt>CompletionException</tt> reported by the stage is unwrapped, so that the promise fails with the
+     * actual cause.
+     *
+     * @param stage the stage to observe
+     * @param <V>   the type of the value of the stage
+     * @return a new promise which is completed with the value or failure of the given stage
+     */
+    @Nonnull
+    public static <V> Promise<V> from(@Nonnull CompletionStage<V> stage) {
+        Promise<V> result = new Promise<>();
+        stage.whenComplete((value, failure) -> {
+            if (failure == null) {
+                result.success(value);
+            } else if (failure instanceof CompletionException && failure.getCause() != null) {
+                result.fail(failure.getCause());
+            } else {
+                result.fail(failure);
+            }
+        });
+        return result;
+    }
+
     /**
      * Adds a completion handler to this promise which only handles the successful completion of the promise.
      * <p>
@@ -0,0 +1,323 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async;
+
+import com.google.common.collect.Lists;
+import sirius.kernel.commons.ValueProvider;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Forks a set of tasks and collects their results, while treating them as one unit of work.
+ * <p>
+ * In contrast to a {@link Barrier}, a task group limits the number of tasks running in parallel, collects the
+ * results in the order in which the tasks were forked and stops the remaining work once a task fails:
+ * <pre>
+ * <code>
+ *      TaskGroup&lt;Integer&gt; group = TaskGroup.create("importer").withParallelism(4);
+ *      for (File file : files) {
+ *          group.fork(() -&gt; importFile(file));
+ *      }
+ *      List&lt;Integer&gt; rowsPerFile = group.await(Duration.ofMinutes(5));
+ * </code>
+ * </pre>
+ * <p>
+ * Each task runs on the executor of the given category within a fork of the <tt>CallContext</tt> of the thread
+ * which created the group. Once a task fails (or {@link #cancel()} is called), the group is cancelled: Tasks which
+ * haven't started yet are skipped and the {@link TaskContext} of each running task reports to be no longer active
+ * (see {@link TaskContext#isActive()}). Therefore long running tasks should check this flag regularly. Calling
+ * {@link TaskContext#cancel()} within a task also cancels the whole group.
+ * <p>
+ * A group is owned by the thread which created it: Only this thread may fork tasks and call {@link #join()}, which
+ * permits to collect the results without any locking. After calling <tt>join</tt>, no further tasks can be forked.
+ *
+ * @param <V> the type of the values computed by the tasks
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@ParametersAreNonnullByDefault
+public class TaskGroup<V> {
+
+    /*
+     * Represents a forked task along with its result
+     */
+    private static class Member<V> {
+        private final ValueProvider<V> computation;
+        private V value;
+
+        private Member(ValueProvider<V> computation) {
+            this.computation = computation;
+        }
+    }
+
+    /*
+     * Reports the group as inactive once it was cancelled, and cancels the group if a task is cancelled. All other
+     * calls are delegated to the adapter of the thread which created the group.
+     */
+    private class MemberAdapter implements TaskContextAdapter {
+        private final TaskContextAdapter delegate;
+
+        private MemberAdapter(TaskContextAdapter delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void log(String message) {
+            delegate.log(message);
+        }
+
+        @Override
+        public void trace(String message) {
+            delegate.trace(message);
+        }
+
+        @Override
+        public void setState(String message) {
+            delegate.setState(message);
+        }
+
+        @Override
+        public void inc(String counter, long duration) {
+            delegate.inc(counter, duration);
+        }
+
+        @Override
+        public void markErroneous() {
+            delegate.markErroneous();
+        }
+
+        @Override
+        public void cancel() {
+            TaskGroup.this.cancel();
+        }
+
+        @Override
+        public void setJobTitle(String jobTitle) {
+            delegate.setJobTitle(jobTitle);
+        }
+
+        @Override
+        public boolean isActive() {
+            return !isCancelled() && delegate.isActive();
+        }
+    }
+
+    private final String category;
+    private int parallelism = Integer.MAX_VALUE;
+    private final TaskContext parentContext;
+    private final List<Member<V>> members = Lists.newArrayList();
+    private final ConcurrentLinkedQueue<Member<V>> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+
+    /*
+     * Contains the number of forked tasks which have not completed yet, plus one until join is called
+     */
+    private final AtomicInteger remaining = new AtomicInteger(1);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Promise<List<V>> result = Async.promise();
+    private boolean joined;
+
+    private TaskGroup(String category) {
+        this.category = category;
+        this.parentContext = TaskContext.get();
+    }
+
+    /**
+     * Creates a new group which runs its tasks on the executor of the given category.
+     *
+     * @param category the category of the executor to use
+     * @param <V>      the type of the values computed by the tasks
+     * @return a new and empty task group
+     */
+    @Nonnull
+    public static <V> TaskGroup<V> create(String category) {
+        return new TaskGroup<>(category);
+    }
+
+    /**
+     * Limits the number of tasks of this group which run in parallel.
+     * <p>
+     * By default, only the executor limits the parallelism.
+     *
+     * @param parallelism the max number of tasks which are started at a time
+     * @return <tt>this</tt> for fluent method chaining
+     */
+    @Nonnull
+    public TaskGroup<V> withParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Forks a task which computes a value.
+     * <p>
+     * The task is started immediately, unless the parallelism of the group is exhausted.
+     *
+     * @param computation the computation to fork
+     * @return <tt>this</tt> for fluent method chaining
+     * @throws IllegalStateException if {@link #join()} was already called
+     */
+    @Nonnull
+    public TaskGroup<V> fork(ValueProvider<V> computation) {
+        if (joined) {
+            throw new IllegalStateException("Cannot fork a task after the group was joined.");
+        }
+        Member<V> member = new Member<>(computation);
+        members.add(member);
+        remaining.incrementAndGet();
+        waiting.add(member);
+        dispatch();
+        return this;
+    }
+
+    /**
+     * Forks a task which doesn't compute a value.
+     * <p>
+     * The result list contains <tt>null</tt> for each of these tasks.
+     *
+     * @param task the task to fork
+     * @return <tt>this</tt> for fluent method chaining
+     * @throws IllegalStateException if {@link #join()} was already called
+     */
+    @Nonnull
+    public TaskGroup<V> run(Runnable task) {
+        return fork(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /*
+     * Starts waiting tasks as long as the parallelism permits
+     */
+    private void dispatch() {
+        while (!waiting.isEmpty()) {
+            int current = running.get();
+            if (current >= parallelism) {
+                return;
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                Member<V> next = waiting.poll();
+                if (next == null) {
+                    running.decrementAndGet();
+                } else {
+                    start(next);
+                }
+            }
+        }
+    }
+
+    /*
+     * Submits the given task to the executor
+     */
+    private void start(Member<V> member) {
+        Async.executor(category).fork(() -> execute(member)).execute();
+    }
+
+    /*
+     * Executes the given task within a TaskContext which is bound to the state of this group
+     */
+    private void execute(Member<V> member) {
+        try {
+            if (!isCancelled()) {
+                TaskContext outer = TaskContext.get();
+                TaskContext ctx = new TaskContext();
+                ctx.setAdapter(new MemberAdapter(parentContext.getAdapter()));
+                CallContext.getCurrent().set(TaskContext.class, ctx);
+                ctx.setSystem(outer.getSystem()).setSubSystem(outer.getSubSystem()).setJob(outer.getJob());
+                member.value = member.computation.get();
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            running.decrementAndGet();
+            dispatch();
+            completeMember();
+        }
+    }
+
+    /*
+     * Cancels the group because of the given error. Only the first error is reported.
+     */
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e) && !result.isCompleted()) {
+            result.fail(e);
+        }
+    }
+
+    /*
+     * Completes the group once all tasks are completed and join was called
+     */
+    private void completeMember() {
+        if (remaining.decrementAndGet() > 0 || isCancelled()) {
+            return;
+        }
+        List<V> values = Lists.newArrayListWithCapacity(members.size());
+        for (Member<V> member : members) {
+            values.add(member.value);
+        }
+        result.success(Collections.unmodifiableList(values));
+    }
+
+    /**
+     * Seals the group and returns a promise for the results of all tasks.
+     * <p>
+     * Calling <tt>join</tt> more than once returns the same promise.
+     *
+     * @return a promise which is completed with the results of all tasks in the order in which they were forked, or
+     * which fails with the first error of a task (or a <tt>CancellationException</tt> if the group was cancelled)
+     */
+    @Nonnull
+    public Promise<List<V>> join() {
+        if (!joined) {
+            joined = true;
+            completeMember();
+        }
+        return result;
+    }
+
+    /**
+     * Seals the group and waits until all tasks are completed.
+     *
+     * @param timeout the max duration to wait
+     * @return the results of all tasks in the order in which they were forked
+     * @throws sirius.kernel.health.HandledException if a task failed or the group didn't complete in time
+     */
+    public List<V> await(Duration timeout) {
+        return join().awaitOrFail(timeout);
+    }
+
+    /**
+     * Cancels the group.
+     * <p>
+     * Tasks which haven't started yet are skipped, running tasks are notified via their {@link TaskContext}. The
+     * promise returned by {@link #join()} fails with a <tt>CancellationException</tt> unless it has already been
+     * completed.
+     */
+    public void cancel() {
+        fail(new CancellationException("The task group was cancelled."));
+    }
+
+    /**
+     * Determines if the group was cancelled, either explicitly or due to a failed task.
+     *
+     * @return <tt>true</tt> if the group was cancelled, <tt>false</tt> otherwise
+     */
+    public boolean isCancelled() {
+        return failure.get() != null;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Computes several values at once if they are not found in a cache
+ * <p>
+ * Can be supplied to {@link CacheManager#createCache(String, ValueComputer, ValueVerifier)} instead of a plain
+ * {@link ValueComputer}. When {@link Cache#getAll(java.util.Collection)} is invoked, all keys which are absent in
+ * the cache are passed to {@link #computeAll(java.util.Collection)} at once. This permits to fetch them from the
+ * underlying store using a single round trip.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public interface BulkValueComputer<K, V> extends ValueComputer<K, V> {
+
+    /**
+     * Computes the values for the given keys
+     *
+     * @param keys the keys which were not found in the cache
+     * @return a map containing a value for each key which could be computed. Keys which are not contained in the
+     * result are considered to be absent and will not be cached
+     */
+    @Nonnull
+    Map<K, V> computeAll(@Nonnull Collection<K> keys);
+
+    /**
+     * Computes the value for a single key by delegating to {@link #computeAll(java.util.Collection)}.
+     *
+     * @param key the key which was used to lookup a value in the cache
+     * @return the appropriate value to be cached for the given key
+     */
+    @Nullable
+    @Override
+    default V compute(@Nonnull K key) {
+        return computeAll(Collections.singletonList(key)).get(key);
+    }
+}
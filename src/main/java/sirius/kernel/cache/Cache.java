@@ -13,9 +13,11 @@ import sirius.kernel.commons.Tuple;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provides a cache which can be used to store and access values.
@@ -30,7 +32,8 @@ import java.util.List;
  * {@link CacheManager#createCache(String, ValueComputer, ValueVerifier)} can be used to supply a
  * <tt>ValueComputer</tt> as well as a <tt>ValueVerifier</tt>. Those classes are responsible for creating non-
  * existent cache values or to verify that cached values are still up to date, before they are returned to a
- * user of the cache.
+ * user of the cache. If many values are required at once, {@link #getAll(java.util.Collection)} in combination
+ * with a {@link BulkValueComputer} resolves all missing values with a single call.
  *
  * @author Andreas Haulfer (aha@scireum.de)
  * @see CacheManager
@@ -54,6 +57,23 @@ public interface Cache<K, V> {
      */
     int getMaxSize();
 
+    /**
+     * Returns the max weight of the cache
+     * <p>
+     * If a <tt>maxWeight</tt> is configured and the cache was created with a {@link Weigher}, entries are evicted
+     * once the sum of their weights exceeds this limit. In this case {@link #getMaxSize()} is ignored.
+     *
+     * @return the maximal total weight of all cached entries or 0 if the cache is limited by its size
+     */
+    long getMaxWeight();
+
+    /**
+     * Returns the total weight of all entries in the cache
+     *
+     * @return the sum of the weights of all cached entries or 0 if the cache has no {@link Weigher}
+     */
+    long getWeight();
+
     /**
      * Returns the number of entries in the cache
      *
@@ -61,6 +81,34 @@ public interface Cache<K, V> {
      */
     int getSize();
 
+    /**
+     * Returns the number of entries kept in the off heap tier.
+     * <p>
+     * If <tt>offHeapSize</tt> is configured for a cache, entries which are evicted from the heap due to size
+     * constraints are serialized and kept outside of the heap. These entries are not counted in {@link #getSize()},
+     * but are promoted back into the heap once they are accessed. They also expire like entries on the heap.
+     *
+     * @return the number of entries stored outside of the heap
+     */
+    int getOffHeapSize();
+
+    /**
+     * Returns the number of bytes occupied by entries in the off heap tier.
+     *
+     * @return the number of bytes used by serialized entries outside of the heap
+     */
+    long getOffHeapBytes();
+
+    /**
+     * Returns the number of hits which were served by the off heap tier.
+     * <p>
+     * Each of these hits is also contained in the overall hit-rate reported by {@link #getHitRate()}. The hits per
+     * tier are also reported by {@link #getStats()}.
+     *
+     * @return the number of entries promoted back into the heap
+     */
+    long getOffHeapHits();
+
     /**
      * Returns the number of reads since the last eviction
      *
@@ -83,6 +131,28 @@ public interface Cache<K, V> {
      */
     Long getHitRate();
 
+    /**
+     * Returns the number of loads which were coalesced since the last eviction.
+     * <p>
+     * If several threads miss the same key at the same time, only one of them invokes the {@link ValueComputer}
+     * while all others wait for its result. Each of those waiting threads is counted as a coalesced load.
+     *
+     * @return the number of computations which were saved by sharing an in-flight computation
+     */
+    long getCoalescedLoads();
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     * <p>
+     * In contrast to {@link #getUses()} or {@link #getHitRate()} the counters of these statistics are not reset
+     * by {@link #runEviction()}. Statistics for a given period can be computed using
+     * {@link CacheStats#minus(CacheStats)}. These statistics are reported to the {@link
+     * sirius.kernel.health.metrics.Metrics} by the {@link CacheMetricProvider}.
+     *
+     * @return the current statistics of this cache
+     */
+    CacheStats getStats();
+
     /**
      * Returns the statistical values of "hit rate" for the last some eviction
      * intervals.
@@ -101,6 +171,10 @@ public interface Cache<K, V> {
     /**
      * Executes the eviction strategy
      * <p>
+     * This records the usage statistics and removes outdated entries. Note that outdated entries are also removed
+     * every ten seconds by the {@link CacheExpiryTimer}, with a limited number of entries per run (see
+     * <tt>evictionBudget</tt>).
+     * <p>
      * This can be called by an administrative tool. However as this method is called regularly by the
      * {@link CacheEvictionTimer}, this does not need to be called manually.
      */
@@ -108,6 +182,9 @@ public interface Cache<K, V> {
 
     /**
      * Clears the complete cache
+     * <p>
+     * If a transport is configured for the {@link InvalidationBus}, the cache with the same name is also cleared
+     * on all other nodes.
      */
     void clear();
 
@@ -133,6 +210,33 @@ public interface Cache<K, V> {
     @Nullable
     V get(@Nonnull K key, @Nullable ValueComputer<K, V> computer);
 
+    /**
+     * Returns the values associated with the given keys.
+     * <p>
+     * This is a shortcut for {@link #getAll(java.util.Collection, ValueComputer)} using the computer supplied when
+     * creating the cache.
+     *
+     * @param keys the keys used to retrieve the values in the cache
+     * @return a map containing all keys for which a value was found or computed, in the order of the given keys
+     */
+    @Nonnull
+    Map<K, V> getAll(@Nonnull Collection<K> keys);
+
+    /**
+     * Returns the values associated with the given keys. If values are not found, the {@link ValueComputer} is
+     * invoked.
+     * <p>
+     * If the given computer is a {@link BulkValueComputer}, all missing keys are resolved with a single call to
+     * {@link BulkValueComputer#computeAll(java.util.Collection)}. Otherwise each missing key is computed on its own.
+     * Each key is counted as either a hit or a miss, just like a call to {@link #get(Object, ValueComputer)}.
+     *
+     * @param keys     the keys used to retrieve the values in the cache
+     * @param computer the computer used to generate values which are absent in the cache
+     * @return a map containing all keys for which a value was found or computed, in the order of the given keys
+     */
+    @Nonnull
+    Map<K, V> getAll(@Nonnull Collection<K> keys, @Nullable ValueComputer<K, V> computer);
+
     /**
      * Stores the given key value mapping in the cache
      *
@@ -141,13 +245,49 @@ public interface Cache<K, V> {
      */
     void put(@Nonnull K key, @Nullable V value);
 
+    /**
+     * Stores the given key value mapping in the cache and attaches the given tags to it
+     * <p>
+     * Tags can be used to remove a group of entries (e.g. all entries belonging to a tenant) via
+     * {@link #invalidateTag(String)}. Tags can also be supplied when computing a value by overriding
+     * {@link TaggingValueComputer#getTags(Object, Object)}.
+     *
+     * @param key   the key used to store this entry
+     * @param value the value to be stored in the entry
+     * @param tags  the tags to attach to the entry
+     */
+    void put(@Nonnull K key, @Nullable V value, @Nonnull Collection<String> tags);
+
+    /**
+     * Stores all given key value mappings in the cache
+     *
+     * @param entries the mappings to store
+     */
+    void putAll(@Nonnull Map<K, V> entries);
+
     /**
      * Removes the given item from the cache
+     * <p>
+     * If a transport is configured for the {@link InvalidationBus}, the item is also removed from the cache with
+     * the same name on all other nodes.
      *
      * @param key the key which should be removed from the cache
      */
     void remove(@Nonnull K key);
 
+    /**
+     * Removes all entries which carry the given tag from the cache
+     * <p>
+     * A secondary index is maintained for all tags, therefore this is proportional to the number of tagged entries
+     * and not to the size of the cache.
+     * <p>
+     * Just like {@link #remove(Object)}, this invalidation is distributed to all other nodes via the
+     * {@link InvalidationBus}.
+     *
+     * @param tag the tag of the entries to remove
+     */
+    void invalidateTag(@Nonnull String tag);
+
     /**
      * Checks if there is a cached entry for the given key
      *
@@ -165,6 +305,10 @@ public interface Cache<K, V> {
 
     /**
      * Provides access to the contents of this cache
+     * <p>
+     * Entries stored in the off heap tier (see {@link #getOffHeapSize()}) are reported after those on the heap and
+     * can be recognized via {@link CacheEntry#isOffHeap()}. As these have to be deserialized, this method is
+     * intended for diagnostic purposes only.
      *
      * @return a list of entries which provide detailed information about each entry in the cache
      */
@@ -173,7 +317,8 @@ public interface Cache<K, V> {
     /**
      * Sets the remove callback which is invoked once a value is removed from the cache.
      * <p>
-     * Only one handler can be set at a time.
+     * Only one handler can be set at a time. The callback is also invoked for entries evicted from the off heap
+     * tier, whose values then have to be deserialized.
      *
      * @param onRemoveCallback the callback to call when an element is removed from the cache. Can be null
      *                         <tt>null</tt> to remove the last handler.
@@ -11,7 +11,11 @@ package sirius.kernel.cache;
 import sirius.kernel.health.Counter;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Represents an entry of a <tt>Cache</tt>
@@ -51,6 +55,27 @@ public class CacheEntry<K, V> {
      * Timestamp of the next verification
      */
     protected long nextVerification;
+    /*
+     * The estimated size of this entry as determined by the Weigher of the cache
+     */
+    protected int weight;
+    /*
+     * The tags attached to this entry which can be used to invalidate it via Cache.invalidateTag
+     */
+    protected Set<String> tags = Collections.emptySet();
+    /*
+     * Set by the cache before it removes this entry due to its ttl or a failed verification, as the underlying
+     * cache only reports an explicit removal in this case
+     */
+    protected volatile EvictionCause evictionCause;
+    /*
+     * Counts how many times this entry was promoted back from the off heap tier of its cache
+     */
+    protected long offHeapHits;
+    /*
+     * Determines if this entry was restored from the off heap tier without being promoted (see Cache.getContents)
+     */
+    protected boolean offHeap;
 
     /**
      * Returns the number of "hits" of this entries
@@ -157,6 +182,90 @@ public class CacheEntry<K, V> {
         this.nextVerification = nextVerification;
     }
 
+    /**
+     * Returns the weight of this entry
+     *
+     * @return the estimated size of this entry as determined by the {@link Weigher} of the cache or 0 if the cache
+     * has no weigher
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /*
+     * Sets the weight of this entry
+     */
+    void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the tags attached to this entry
+     *
+     * @return an unmodifiable set of all tags which were given when the entry was put into the cache
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    /*
+     * Sets the tags of this entry
+     */
+    void setTags(Collection<String> tags) {
+        this.tags = tags.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(tags));
+    }
+
+    /*
+     * Returns the reason for the removal of this entry if it was determined by the cache itself
+     */
+    EvictionCause getEvictionCause() {
+        return evictionCause;
+    }
+
+    /*
+     * Marks the reason why this entry is about to be removed
+     */
+    void setEvictionCause(EvictionCause evictionCause) {
+        this.evictionCause = evictionCause;
+    }
+
+    /**
+     * Returns the number of hits which were served by the off heap tier of the cache.
+     * <p>
+     * Each time the entry is accessed while being stored off heap, it is promoted back into the heap. Therefore
+     * this counts the promotions of this entry, whereas {@link #getHits()} counts the hits since the last
+     * promotion.
+     *
+     * @return the number of times this entry was promoted back into the heap
+     */
+    public long getOffHeapHits() {
+        return offHeapHits;
+    }
+
+    /*
+     * Sets the number of hits served by the off heap tier
+     */
+    void setOffHeapHits(long offHeapHits) {
+        this.offHeapHits = offHeapHits;
+    }
+
+    /**
+     * Determines if this entry is currently stored in the off heap tier of the cache.
+     *
+     * @return <tt>true</tt> if the entry was reported from the off heap tier, <tt>false</tt> if it is stored on the
+     * heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /*
+     * Marks this entry as restored from the off heap tier
+     */
+    void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
     /**
      * Returns the key associated with this entry
      *
@@ -0,0 +1,36 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import sirius.kernel.di.std.Register;
+import sirius.kernel.timer.EveryTenSeconds;
+
+/**
+ * Invoked regularly to remove outdated entries from the system caches
+ * <p>
+ * In contrast to the {@link CacheEvictionTimer} this runs frequently but only removes a limited number of entries
+ * per cache and run (see <tt>evictionBudget</tt> in the cache config).
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Register
+public class CacheExpiryTimer implements EveryTenSeconds {
+
+    @Override
+    public void runTimer() throws Exception {
+        long now = System.currentTimeMillis();
+        for (Cache<?, ?> cache : CacheManager.getCaches()) {
+            if (cache instanceof ManagedCache) {
+                ((ManagedCache<?, ?>) cache).expireEntries(now);
+            }
+        }
+    }
+
+}
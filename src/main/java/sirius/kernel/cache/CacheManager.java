@@ -68,9 +68,20 @@ public class CacheManager {
      * The system config can provide the following values:
      * <ul>
      * <li><tt>maxSize</tt>: max number of entries in the cache</li>
+     * <li><tt>maxWeight</tt>: max total weight of all entries in the cache. This is only used if a {@link Weigher}
+     * is supplied and replaces <tt>maxSize</tt> if present.</li>
      * <li><tt>ttl</tt>: a duration specifying the max lifetime of a cached entry.</li>
      * <li><tt>verification</tt>: a duration specifying in which interval a verification of a value will
      * take place (if possible)</li>
+     * <li><tt>coalesceLoads</tt>: determines if concurrent misses for the same key share a single invocation
+     * of the <tt>valueComputer</tt> (default: <tt>true</tt>)</li>
+     * <li><tt>refreshAhead</tt>: a duration before the expiry or next verification of an entry. If an entry is
+     * accessed within this window, its stale value is returned and it is recomputed or verified in the background
+     * (using the executor <tt>cache-refresh</tt>). A value of 0 disables this.</li>
+     * <li><tt>offHeapSize</tt>: the number of megabytes which are used outside of the heap to store serialized
+     * entries which were evicted from the heap due to <tt>maxSize</tt>. A value of 0 disables this tier.</li>
+     * <li><tt>evictionBudget</tt>: the max number of outdated entries which are removed per run of the
+     * {@link CacheExpiryTimer}. Remaining entries are removed by the next run.</li>
      * </ul>
      *
      * @param name          the name of the cache, used to load the appropriate extension from the config
@@ -87,7 +98,31 @@ public class CacheManager {
     public static <K, V> Cache<K, V> createCache(String name,
                                                  ValueComputer<K, V> valueComputer,
                                                  ValueVerifier<V> verifier) {
-        Cache<K, V> result = new ManagedCache<>(name, valueComputer, verifier);
+        return createCache(name, valueComputer, verifier, null);
+    }
+
+    /**
+     * Creates a cache with the given name which limits its entries by their weight.
+     * <p>
+     * Works like {@link #createCache(String, ValueComputer, ValueVerifier)} but uses the given <tt>weigher</tt> to
+     * estimate the size of each entry. If <tt>maxWeight</tt> is specified in the config, entries are evicted once
+     * their total weight exceeds this value.
+     *
+     * @param name          the name of the cache, used to load the appropriate extension from the config
+     * @param valueComputer used to compute a value, if no valid value was found in the cache for the given key. Can
+     *                      be <tt>null</tt>.
+     * @param verifier      used to verify a value before it is returned to the user. Can be <tt>null</tt>.
+     * @param weigher       used to estimate the size of each entry. Can be <tt>null</tt> in which case the cache is
+     *                      limited by <tt>maxSize</tt>.
+     * @param <K>           the key field used to identify cache entries
+     * @param <V>           the value type used by the cache
+     * @return a newly created cache according to the given parameters and the settings in the system config
+     */
+    public static <K, V> Cache<K, V> createCache(String name,
+                                                 ValueComputer<K, V> valueComputer,
+                                                 ValueVerifier<V> verifier,
+                                                 Weigher<K, V> weigher) {
+        Cache<K, V> result = new ManagedCache<>(name, valueComputer, verifier, weigher);
         caches.add(result);
         return result;
     }
@@ -0,0 +1,65 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import com.google.common.collect.Maps;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.metrics.MetricProvider;
+import sirius.kernel.health.metrics.MetricsCollector;
+
+import java.util.Map;
+
+/**
+ * Reports the statistics of all caches known to the {@link CacheManager} as metrics.
+ * <p>
+ * Counters like the hit rate or the number of evictions are reported per minute, by comparing the current
+ * {@link CacheStats} of each cache with the ones recorded in the previous run. Caches which have neither entries
+ * nor requests are skipped.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Register
+public class CacheMetricProvider implements MetricProvider {
+
+    /*
+     * Contains the statistics of each cache as recorded in the last run
+     */
+    private final Map<Cache<?, ?>, CacheStats> lastStats = Maps.newHashMap();
+
+    @Override
+    public void gather(MetricsCollector collector) {
+        for (Cache<?, ?> cache : CacheManager.getCaches()) {
+            CacheStats current = cache.getStats();
+            CacheStats previous = lastStats.put(cache, current);
+            if (previous == null) {
+                continue;
+            }
+            CacheStats window = current.minus(previous);
+            if (window.getRequestCount() == 0 && cache.getSize() == 0) {
+                continue;
+            }
+            String prefix = "Cache " + cache.getName() + " - ";
+            collector.metric("cache-requests", prefix + "Requests", window.getRequestCount(), "/min");
+            collector.metric("cache-hit-rate", prefix + "Hit Rate", window.getHitRate(), "%");
+            collector.metric("cache-evictions", prefix + "Evictions", window.getEvictionCount(), "/min");
+            collector.metric("cache-load-time", prefix + "Load Time", window.getAverageLoadTime(), "ms");
+            collector.metric("cache-load-time", prefix + "Load Time (95%)", window.getLoadTime95(), "ms");
+            collector.metric("cache-size", prefix + "Size", cache.getSize(), null);
+            if (cache.getMaxWeight() > 0) {
+                collector.metric("cache-weight", prefix + "Weight", cache.getWeight(), null);
+            }
+            if (cache.getOffHeapSize() > 0 || window.getOffHeapHitCount() > 0) {
+                collector.metric("cache-off-heap", prefix + "Off-Heap", cache.getOffHeapBytes() / 1024d, "KB");
+                collector.metric("cache-hits", prefix + "Heap Hits", window.getHeapHitCount(), "/min");
+                collector.metric("cache-hits", prefix + "Off-Heap Hits", window.getOffHeapHitCount(), "/min");
+            }
+        }
+    }
+}
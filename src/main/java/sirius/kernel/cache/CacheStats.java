@@ -0,0 +1,244 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Contains a snapshot of the statistics of a {@link Cache}.
+ * <p>
+ * All counters are accumulated over the lifetime of the cache. To compute the statistics of a certain period,
+ * two snapshots can be subtracted using {@link #minus(CacheStats)}. The load time percentiles however describe
+ * the loads since the last run of {@link Cache#runEviction()}.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public class CacheStats {
+
+    private final long hitCount;
+    private final long offHeapHitCount;
+    private final long missCount;
+    private final long coalescedLoadCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long loadTime95;
+    private final long maxLoadTime;
+    private final Map<EvictionCause, Long> evictionCounts;
+
+    /*
+     * Created by ManagedCache.getStats or minus. All times are given in microseconds.
+     */
+    CacheStats(long hitCount,
+               long offHeapHitCount,
+               long missCount,
+               long coalescedLoadCount,
+               long loadSuccessCount,
+               long loadFailureCount,
+               long totalLoadTime,
+               long loadTime95,
+               long maxLoadTime,
+               Map<EvictionCause, Long> evictionCounts) {
+        this.hitCount = hitCount;
+        this.offHeapHitCount = offHeapHitCount;
+        this.missCount = missCount;
+        this.coalescedLoadCount = coalescedLoadCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.loadTime95 = loadTime95;
+        this.maxLoadTime = maxLoadTime;
+        this.evictionCounts = Collections.unmodifiableMap(new EnumMap<>(evictionCounts));
+    }
+
+    /**
+     * Returns the number of lookups which found a valid entry.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of hits which were served by the heap tier.
+     *
+     * @return the number of hits which didn't require to promote an entry from the off heap tier
+     */
+    public long getHeapHitCount() {
+        return hitCount - offHeapHitCount;
+    }
+
+    /**
+     * Returns the number of hits which were served by the off heap tier.
+     * <p>
+     * These hits are also contained in {@link #getHitCount()}.
+     *
+     * @return the number of hits which promoted an entry from the off heap tier back into the heap
+     */
+    public long getOffHeapHitCount() {
+        return offHeapHitCount;
+    }
+
+    /**
+     * Returns the number of lookups which didn't find a valid entry.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the total number of lookups.
+     *
+     * @return the number of hits and misses
+     */
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * Returns the percentage of lookups which found a valid entry.
+     *
+     * @return the hit rate in percent or 0 if there were no lookups
+     */
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return requests == 0 ? 0d : 100d * hitCount / requests;
+    }
+
+    /**
+     * Returns the number of misses which waited for a computation already in progress instead of computing the
+     * value themselves.
+     *
+     * @return the number of coalesced loads
+     */
+    public long getCoalescedLoadCount() {
+        return coalescedLoadCount;
+    }
+
+    /**
+     * Returns the number of successful invocations of the value computer.
+     *
+     * @return the number of computed values (a bulk computation is counted once)
+     */
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * Returns the number of failed invocations of the value computer.
+     *
+     * @return the number of computations which threw an exception
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Returns the average duration of a computation.
+     *
+     * @return the average load time in milliseconds
+     */
+    public double getAverageLoadTime() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0d : totalLoadTime / 1000d / loads;
+    }
+
+    /**
+     * Returns the duration within which 95% of all computations completed.
+     * <p>
+     * This is estimated by a {@link sirius.kernel.health.Histogram} and covers the loads since the last run of
+     * {@link Cache#runEviction()}.
+     *
+     * @return the 95th percentile of the load time in milliseconds
+     */
+    public double getLoadTime95() {
+        return loadTime95 / 1000d;
+    }
+
+    /**
+     * Returns the duration of the slowest computation since the last run of {@link Cache#runEviction()}.
+     *
+     * @return the max load time in milliseconds
+     */
+    public double getMaxLoadTime() {
+        return maxLoadTime / 1000d;
+    }
+
+    /**
+     * Returns the number of entries removed for the given reason.
+     *
+     * @param cause the reason to check
+     * @return the number of entries removed for the given reason
+     */
+    public long getEvictionCount(EvictionCause cause) {
+        Long result = evictionCounts.get(cause);
+        return result == null ? 0 : result;
+    }
+
+    /**
+     * Returns the number of entries removed for any reason other than being replaced.
+     *
+     * @return the number of removed entries
+     */
+    public long getEvictionCount() {
+        long result = 0;
+        for (Map.Entry<EvictionCause, Long> entry : evictionCounts.entrySet()) {
+            if (entry.getKey() != EvictionCause.REPLACED) {
+                result += entry.getValue();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the difference between this and the given (older) snapshot.
+     * <p>
+     * The load time percentile and max are taken from this snapshot.
+     *
+     * @param other the snapshot to subtract
+     * @return the statistics which were recorded between both snapshots
+     */
+    public CacheStats minus(CacheStats other) {
+        Map<EvictionCause, Long> evictions = new EnumMap<>(EvictionCause.class);
+        for (EvictionCause cause : EvictionCause.values()) {
+            evictions.put(cause, Math.max(0, getEvictionCount(cause) - other.getEvictionCount(cause)));
+        }
+        return new CacheStats(Math.max(0, hitCount - other.hitCount),
+                              Math.max(0, offHeapHitCount - other.offHeapHitCount),
+                              Math.max(0, missCount - other.missCount),
+                              Math.max(0, coalescedLoadCount - other.coalescedLoadCount),
+                              Math.max(0, loadSuccessCount - other.loadSuccessCount),
+                              Math.max(0, loadFailureCount - other.loadFailureCount),
+                              Math.max(0, totalLoadTime - other.totalLoadTime),
+                              loadTime95,
+                              maxLoadTime,
+                              evictions);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+               "hits=" + hitCount +
+               ", offHeapHits=" + offHeapHitCount +
+               ", misses=" + missCount +
+               ", coalescedLoads=" + coalescedLoadCount +
+               ", loadSuccesses=" + loadSuccessCount +
+               ", loadFailures=" + loadFailureCount +
+               ", avgLoadTime=" + getAverageLoadTime() +
+               ", loadTime95=" + getLoadTime95() +
+               ", evictions=" + evictionCounts +
+               '}';
+    }
+}
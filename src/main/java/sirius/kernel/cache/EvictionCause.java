@@ -0,0 +1,52 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+/**
+ * Enumerates the reasons why an entry was removed from a {@link Cache}.
+ * <p>
+ * This extends the <tt>RemovalCause</tt> of the underlying Guava cache by the reasons known only to the
+ * {@link ManagedCache} (an exceeded <tt>ttl</tt> or a failed verification).
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public enum EvictionCause {
+
+    /**
+     * The entry was removed via {@link Cache#remove(Object)}, {@link Cache#invalidateTag(String)} or
+     * {@link Cache#clear()}
+     */
+    EXPLICIT,
+
+    /**
+     * The value of the entry was replaced by a new one
+     */
+    REPLACED,
+
+    /**
+     * The entry was removed as the cache exceeded its <tt>maxSize</tt> or <tt>maxWeight</tt>
+     */
+    SIZE,
+
+    /**
+     * The entry was removed as it exceeded its <tt>ttl</tt>
+     */
+    EXPIRED,
+
+    /**
+     * The entry was removed as the {@link ValueVerifier} rejected its value
+     */
+    VERIFICATION,
+
+    /**
+     * The key or value was garbage collected
+     */
+    COLLECTED
+}
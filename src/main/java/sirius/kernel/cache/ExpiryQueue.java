@@ -0,0 +1,134 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the keys of a {@link ManagedCache} ordered by the time their entries expire.
+ * <p>
+ * Keys are grouped into buckets of one second, which are sorted by time. Therefore expiring entries only touches
+ * the buckets which are actually due, instead of scanning the whole cache. Keys are not moved when their entry is
+ * replaced, so the caller has to check if the current entry for a key is really expired.
+ *
+ * @param <K> the type of the keys used by the cache
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+class ExpiryQueue<K> {
+
+    /*
+     * Duration of a bucket in milliseconds
+     */
+    private static final long RESOLUTION = 1000;
+
+    private final ConcurrentSkipListMap<Long, Set<K>> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * Schedules the given key to be checked once the given point in time has passed.
+     *
+     * @param key    the key to schedule
+     * @param maxAge the timestamp at which the entry for the given key expires
+     */
+    void schedule(K key, long maxAge) {
+        long slot = maxAge / RESOLUTION;
+        while (true) {
+            Set<K> bucket = buckets.computeIfAbsent(slot, ignored -> ConcurrentHashMap.newKeySet());
+            bucket.add(key);
+            // If the bucket was drained and removed by expire in the meantime, the key has to be added again.
+            // Otherwise expire will find the key when it re-checks the removed bucket...
+            if (buckets.get(slot) == bucket) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the given key, which was scheduled with the given expiry.
+     * <p>
+     * If the key was scheduled again (with <tt>currentMaxAge</tt>) and ended up in the same bucket, it is kept.
+     * Empty buckets are kept until they are due, as they might be filled again.
+     *
+     * @param key           the key to remove
+     * @param maxAge        the timestamp which was used to schedule the key
+     * @param currentMaxAge the timestamp used to schedule the current entry for the key or 0 if there is none
+     */
+    void unschedule(K key, long maxAge, long currentMaxAge) {
+        if (maxAge / RESOLUTION == currentMaxAge / RESOLUTION) {
+            return;
+        }
+        Set<K> bucket = buckets.get(maxAge / RESOLUTION);
+        if (bucket != null) {
+            bucket.remove(key);
+        }
+    }
+
+    /**
+     * Hands all keys which were scheduled before the given timestamp to the given <tt>expiry</tt>.
+     * <p>
+     * Only buckets which lie completely in the past are processed. At most <tt>budget</tt> keys are processed,
+     * all remaining keys are kept for the next call.
+     *
+     * @param now    the current timestamp
+     * @param budget the max number of keys to process
+     * @param expiry invoked for each due key. Returns <tt>true</tt> if an entry was actually removed
+     * @return the number of keys for which the <tt>expiry</tt> returned <tt>true</tt>
+     */
+    int expire(long now, int budget, Predicate<K> expiry) {
+        int processed = 0;
+        int expired = 0;
+        Iterator<Map.Entry<Long, Set<K>>> iter = buckets.headMap(now / RESOLUTION).entrySet().iterator();
+        while (iter.hasNext() && processed < budget) {
+            Map.Entry<Long, Set<K>> bucket = iter.next();
+            Iterator<K> keys = bucket.getValue().iterator();
+            while (keys.hasNext() && processed < budget) {
+                K key = keys.next();
+                keys.remove();
+                processed++;
+                if (expiry.test(key)) {
+                    expired++;
+                }
+            }
+            if (bucket.getValue().isEmpty() && buckets.remove(bucket.getKey(), bucket.getValue())) {
+                // A key might have been added to the bucket after it was drained - schedule it again...
+                for (K key : bucket.getValue()) {
+                    schedule(key, bucket.getKey() * RESOLUTION);
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of scheduled keys.
+     * <p>
+     * Note that this has to visit all buckets and is therefore not intended to be called frequently.
+     *
+     * @return the number of keys in this queue
+     */
+    int size() {
+        int result = 0;
+        for (Set<K> bucket : buckets.values()) {
+            result += bucket.size();
+        }
+        return result;
+    }
+
+    /**
+     * Removes all keys.
+     */
+    void clear() {
+        buckets.clear();
+    }
+}
@@ -8,9 +8,18 @@
 
 package sirius.kernel.cache;
 
+import sirius.kernel.async.Async;
 import sirius.kernel.commons.ValueProvider;
+import sirius.kernel.commons.Watch;
+import sirius.kernel.health.Average;
+import sirius.kernel.health.Exceptions;
 
 import javax.annotation.Nullable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Caches a single value to prevent frequent re-computation.
@@ -18,6 +27,12 @@ import javax.annotation.Nullable;
  * Caches a computed value for a certain amount of time. Re-computes the value once the value is expired and the
  * cache is used again.
  * <p>
+ * This class is thread-safe. Once the value expired, exactly one thread re-computes it while all other threads
+ * are still served with the previous value (stale-while-revalidate). Using {@link #recomputeAsync(String)} the
+ * re-computation can be handed to an executor, so that no caller has to wait for it. Only if there is no value at
+ * all, or if it is older than the optional hard expiry (see {@link #hardExpireAfter(long, TimeUnit)}), the callers
+ * wait for the re-computation.
+ * <p>
  * A real lookup cache, with a Map like behaviour can be found here: {@link Cache}.
  * <p>
  * Use {@link CacheManager#createInlineCache(long, java.util.concurrent.TimeUnit, sirius.kernel.commons.ValueProvider)}
@@ -28,10 +43,27 @@ import javax.annotation.Nullable;
  * @since 2013/08
  */
 public class InlineCache<E> {
-    private E buffer;
-    private long lastComputation;
-    private long timeout;
-    private ValueProvider<E> computer;
+
+    /*
+     * Immutable pair of the cached value and its computation timestamp, so that both are always published together
+     */
+    private static class Snapshot<E> {
+        private final E value;
+        private final long computed;
+
+        private Snapshot(E value, long computed) {
+            this.value = value;
+            this.computed = computed;
+        }
+    }
+
+    private final AtomicReference<Snapshot<E>> state = new AtomicReference<>();
+    private final AtomicReference<FutureTask<Snapshot<E>>> inFlight = new AtomicReference<>();
+    private final long timeout;
+    private volatile long hardTimeout;
+    private volatile String executor;
+    private final ValueProvider<E> computer;
+    private final Average recomputeDuration = new Average();
 
     /**
      * Creates a new inline cache based on the given parameters.
@@ -44,6 +76,34 @@ public class InlineCache<E> {
         this.timeout = timeout;
     }
 
+    /**
+     * Specifies a max age after which the cached value must no longer be served, even if its re-computation is
+     * still in progress.
+     * <p>
+     * By default, an expired value is served until its re-computation finished.
+     *
+     * @param hardTimeout the max age of a value served by this cache
+     * @param unit        the unit in which <tt>hardTimeout</tt> is expressed
+     * @return the cache itself for fluent method calls
+     */
+    public InlineCache<E> hardExpireAfter(long hardTimeout, TimeUnit unit) {
+        this.hardTimeout = TimeUnit.MILLISECONDS.convert(hardTimeout, unit);
+        return this;
+    }
+
+    /**
+     * Specifies that expired values are re-computed using the given executor instead of the calling thread.
+     * <p>
+     * If the executor is overloaded, the re-computation is skipped and re-attempted on the next access.
+     *
+     * @param category the name of the executor (see {@link Async#executor(String)}) used to re-compute values
+     * @return the cache itself for fluent method calls
+     */
+    public InlineCache<E> recomputeAsync(String category) {
+        this.executor = category;
+        return this;
+    }
+
     /**
      * Either returns a cached value or computes a new one, if no valid value is in the cache.
      *
@@ -51,17 +111,129 @@ public class InlineCache<E> {
      */
     @Nullable
     public E get() {
-        if (System.currentTimeMillis() - lastComputation > timeout) {
-            buffer = computer.get();
-            lastComputation = System.currentTimeMillis();
+        Snapshot<E> current = state.get();
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.computed <= timeout) {
+            return current.value;
+        }
+        if (current == null || (hardTimeout > 0 && now - current.computed > hardTimeout)) {
+            return awaitRecompute(current);
+        }
+
+        // The value is expired but still usable - let one thread re-compute it and serve the stale value meanwhile
+        FutureTask<Snapshot<E>> task = new FutureTask<>(() -> compute(current));
+        if (!inFlight.compareAndSet(null, task)) {
+            return current.value;
+        }
+        if (executor != null) {
+            Async.executor(executor)
+                 .fork(() -> run(task))
+                 .dropOnOverload(() -> {
+                     // Wake up all threads waiting for the task, so that they compute the value themselves...
+                     task.cancel(false);
+                     inFlight.compareAndSet(task, null);
+                 })
+                 .execute();
+            return current.value;
+        }
+        run(task);
+        try {
+            return task.get().value;
+        } catch (Throwable e) {
+            // The failure has already been handled by run - keep serving the previous value...
+            Exceptions.ignore(e);
+            return current.value;
         }
-        return buffer;
+    }
+
+    /*
+     * Waits for the re-computation in progress or starts one within the calling thread
+     */
+    private E awaitRecompute(@Nullable Snapshot<E> seen) {
+        while (true) {
+            FutureTask<Snapshot<E>> task = inFlight.get();
+            if (task == null) {
+                FutureTask<Snapshot<E>> newTask = new FutureTask<>(() -> compute(seen));
+                if (!inFlight.compareAndSet(null, newTask)) {
+                    continue;
+                }
+                try {
+                    newTask.run();
+                } finally {
+                    inFlight.compareAndSet(newTask, null);
+                }
+                task = newTask;
+            }
+            try {
+                return task.get().value;
+            } catch (CancellationException e) {
+                // The re-computation was dropped due to an overloaded executor - start a new one...
+                Exceptions.ignore(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw Exceptions.handle(CacheManager.LOG, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Exceptions.handle(CacheManager.LOG, e);
+            }
+        }
+    }
+
+    /*
+     * Executes a re-computation started by get() and logs any failure, as nobody waits for its result
+     */
+    private void run(FutureTask<Snapshot<E>> task) {
+        try {
+            task.run();
+            task.get();
+        } catch (ExecutionException e) {
+            Exceptions.handle(CacheManager.LOG, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.compareAndSet(task, null);
+        }
+    }
+
+    /*
+     * Computes and stores a new value, unless the state was already updated since we've decided to re-compute it
+     */
+    private Snapshot<E> compute(@Nullable Snapshot<E> seen) {
+        Snapshot<E> current = state.get();
+        if (current != seen && current != null) {
+            return current;
+        }
+        Watch w = Watch.start();
+        Snapshot<E> result = new Snapshot<>(computer.get(), System.currentTimeMillis());
+        recomputeDuration.addValue(w.elapsedMillis());
+        state.compareAndSet(current, result);
+        return result;
     }
 
     /**
      * Forces the cache to reset and re-compute its internal value on the next access
      */
     public void flush() {
-        lastComputation = 0;
+        state.set(null);
+    }
+
+    /**
+     * Returns the average duration of a re-computation in milliseconds.
+     *
+     * @return the average duration of the last re-computations
+     */
+    public double getAverageRecomputeDuration() {
+        return recomputeDuration.getAvg();
+    }
+
+    /**
+     * Returns the number of re-computations performed by this cache.
+     *
+     * @return the number of times the value was computed
+     */
+    public long getRecomputations() {
+        return recomputeDuration.getCount();
     }
 }
@@ -0,0 +1,385 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import sirius.kernel.Lifecycle;
+import sirius.kernel.async.Async;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.di.GlobalContext;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Context;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the caches of several nodes coherent by distributing invalidations.
+ * <p>
+ * Each call to {@link Cache#remove(Object)}, {@link Cache#clear()} or {@link Cache#invalidateTag(String)} is
+ * published to all other nodes, which then apply the same invalidation to their cache with the same name. The
+ * invalidations are collected and sent as compact batches using the executor <tt>cache-invalidation</tt>.
+ * <p>
+ * Only keys of type <tt>String</tt>, <tt>Long</tt> or <tt>Integer</tt> are transmitted. Removing any other key
+ * clears the whole cache on all other nodes, as objects received from the network are never deserialized.
+ * <p>
+ * The actual transport is pluggable (see {@link InvalidationTransport}) and selected via
+ * <tt>cache-coherence.transport</tt>. If no transport is given, invalidations are only applied locally.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Register(classes = {InvalidationBus.class, Lifecycle.class})
+public class InvalidationBus implements Lifecycle {
+
+    /**
+     * Enumerates the kinds of invalidations which are distributed
+     */
+    enum Operation {
+        REMOVE, CLEAR, TAG
+    }
+
+    /**
+     * Describes a single invalidation of a cache
+     */
+    static class Invalidation {
+        private final String cache;
+        private final Operation operation;
+        private final Object argument;
+
+        Invalidation(String cache, Operation operation, @Nullable Object argument) {
+            this.cache = cache;
+            this.operation = operation;
+            this.argument = argument;
+        }
+
+        String getCache() {
+            return cache;
+        }
+
+        Operation getOperation() {
+            return operation;
+        }
+
+        Object getArgument() {
+            return argument;
+        }
+    }
+
+    /*
+     * Version of the message format. Messages with another version are discarded
+     */
+    private static final byte VERSION = 1;
+
+    /*
+     * Max size of a single message. This is kept below the size limit of an UDP datagram
+     */
+    private static final int MAX_MESSAGE_SIZE = 60000;
+
+    /*
+     * Type markers of encoded keys
+     */
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_LONG = 'L';
+    private static final byte TYPE_INT = 'I';
+
+    /*
+     * Executor category used to send batches of invalidations
+     */
+    private static final String INVALIDATION_EXECUTOR = "cache-invalidation";
+
+    @ConfigValue("cache-coherence.transport")
+    private String transportName;
+
+    @Context
+    private GlobalContext ctx;
+
+    /*
+     * Identifies this node, so that our own messages can be ignored when they are received
+     */
+    private final String origin = UUID.randomUUID().toString();
+
+    private volatile InvalidationTransport transport;
+    private final Consumer<byte[]> receiver = this::receive;
+    private final Queue<Invalidation> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong invalidationsSent = new AtomicLong();
+    private final AtomicLong invalidationsReceived = new AtomicLong();
+
+    @Override
+    public void started() {
+        if (Strings.isEmpty(transportName)) {
+            return;
+        }
+        try {
+            InvalidationTransport selectedTransport = ctx.findPart(transportName, InvalidationTransport.class);
+            selectedTransport.subscribe(receiver);
+            transport = selectedTransport;
+            CacheManager.LOG.INFO("Distributing cache invalidations via: %s", transportName);
+        } catch (Throwable e) {
+            Exceptions.handle()
+                      .to(CacheManager.LOG)
+                      .error(e)
+                      .withSystemErrorMessage("Cannot start cache invalidation transport %s: %s (%s)", transportName)
+                      .handle();
+        }
+    }
+
+    @Override
+    public void stopped() {
+        InvalidationTransport currentTransport = transport;
+        if (currentTransport != null) {
+            flush();
+            transport = null;
+            currentTransport.unsubscribe(receiver);
+        }
+    }
+
+    @Override
+    public void awaitTermination() {
+        // Nothing to wait for...
+    }
+
+    @Override
+    public String getName() {
+        return "cache-coherence (Cache Invalidation Bus)";
+    }
+
+    /**
+     * Determines if invalidations are distributed to other nodes.
+     *
+     * @return <tt>true</tt> if a transport is active, <tt>false</tt> otherwise
+     */
+    public boolean isActive() {
+        return transport != null;
+    }
+
+    /**
+     * Returns the number of messages sent to other nodes.
+     *
+     * @return the number of sent messages
+     */
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    /**
+     * Returns the number of invalidations sent to other nodes. As invalidations are batched, this is usually
+     * larger than {@link #getMessagesSent()}.
+     *
+     * @return the number of sent invalidations
+     */
+    public long getInvalidationsSent() {
+        return invalidationsSent.get();
+    }
+
+    /**
+     * Returns the number of invalidations received from other nodes.
+     *
+     * @return the number of received invalidations
+     */
+    public long getInvalidationsReceived() {
+        return invalidationsReceived.get();
+    }
+
+    /*
+     * Enqueues the given invalidation and schedules a flush if none is pending yet
+     */
+    void publish(Invalidation invalidation) {
+        if (transport == null) {
+            return;
+        }
+        pending.add(invalidation);
+        if (flushScheduled.compareAndSet(false, true)) {
+            Async.executor(INVALIDATION_EXECUTOR).start(this::flush).execute();
+        }
+    }
+
+    /*
+     * Sends all pending invalidations. The flag is reset first, so that invalidations published while we're
+     * draining the queue either end up in this batch or schedule another flush.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        List<byte[]> batch = new ArrayList<>();
+        int batchSize = 0;
+        Invalidation next = pending.poll();
+        while (next != null) {
+            byte[] encoded = encode(next);
+            if (batchSize + encoded.length > MAX_MESSAGE_SIZE && !batch.isEmpty()) {
+                send(batch);
+                batch.clear();
+                batchSize = 0;
+            }
+            batch.add(encoded);
+            batchSize += encoded.length;
+            next = pending.poll();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /*
+     * Sends the given encoded invalidations as one message
+     */
+    private void send(List<byte[]> batch) {
+        InvalidationTransport currentTransport = transport;
+        if (currentTransport == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(VERSION);
+            out.writeUTF(origin);
+            out.writeInt(batch.size());
+            for (byte[] invalidation : batch) {
+                out.write(invalidation);
+            }
+            out.flush();
+            currentTransport.send(buffer.toByteArray());
+            messagesSent.incrementAndGet();
+            invalidationsSent.addAndGet(batch.size());
+        } catch (Throwable e) {
+            Exceptions.handle(CacheManager.LOG, e);
+        }
+    }
+
+    /*
+     * Encodes a single invalidation. If the key of a REMOVE cannot be encoded (see writeKey), the whole cache is
+     * cleared instead
+     */
+    private byte[] encode(Invalidation invalidation) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(invalidation.getOperation().ordinal());
+            out.writeUTF(invalidation.getCache());
+            if (invalidation.getOperation() == Operation.TAG) {
+                out.writeUTF((String) invalidation.getArgument());
+            } else if (invalidation.getOperation() == Operation.REMOVE) {
+                writeKey(out, invalidation.getArgument());
+            }
+            out.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            Exceptions.ignore(e);
+            CacheManager.LOG.FINE("Cannot encode an invalidation of %s - clearing the cache on all nodes...",
+                                  invalidation.getCache());
+            return encode(new Invalidation(invalidation.getCache(), Operation.CLEAR, null));
+        }
+    }
+
+    /*
+     * Writes the given key along with a type marker. Only strings, longs and integers are supported. Other keys are
+     * rejected, as deserializing arbitrary objects received from the network would permit remote code execution.
+     */
+    private void writeKey(DataOutputStream out, Object key) throws IOException {
+        if (key instanceof String && ((String) key).length() < MAX_MESSAGE_SIZE / 4) {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String) key);
+        } else if (key instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) key);
+        } else if (key instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) key);
+        } else {
+            throw new IOException("Unsupported key type");
+        }
+    }
+
+    /*
+     * Decodes a received message and applies all invalidations to the local caches
+     */
+    private void receive(byte[] message) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+            if (in.readByte() != VERSION) {
+                return;
+            }
+            if (origin.equals(in.readUTF())) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                apply(readInvalidation(in));
+                invalidationsReceived.incrementAndGet();
+            }
+        } catch (Throwable e) {
+            Exceptions.handle(CacheManager.LOG, e);
+        }
+    }
+
+    /*
+     * Reads a single invalidation written by encode
+     */
+    private Invalidation readInvalidation(DataInputStream in) throws IOException {
+        Operation operation = Operation.values()[in.readByte()];
+        String cache = in.readUTF();
+        if (operation == Operation.TAG) {
+            return new Invalidation(cache, operation, in.readUTF());
+        } else if (operation == Operation.REMOVE) {
+            return new Invalidation(cache, operation, readKey(in));
+        } else {
+            return new Invalidation(cache, operation, null);
+        }
+    }
+
+    /*
+     * Reads a key written by writeKey
+     */
+    private Object readKey(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_STRING:
+                return in.readUTF();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_INT:
+                return in.readInt();
+            default:
+                throw new IOException("Unknown key type: " + type);
+        }
+    }
+
+    /*
+     * Applies the given invalidation to all local caches with the given name, without publishing it again
+     */
+    @SuppressWarnings("unchecked")
+    private void apply(Invalidation invalidation) {
+        for (Cache<?, ?> cache : CacheManager.getCaches()) {
+            if (cache instanceof ManagedCache && Strings.areEqual(cache.getName(), invalidation.getCache())) {
+                ManagedCache<Object, ?> managedCache = (ManagedCache<Object, ?>) cache;
+                if (invalidation.getOperation() == Operation.REMOVE) {
+                    managedCache.removeLocal(invalidation.getArgument());
+                } else if (invalidation.getOperation() == Operation.TAG) {
+                    managedCache.invalidateTagLocal((String) invalidation.getArgument());
+                } else {
+                    managedCache.clearLocal();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import sirius.kernel.di.std.Named;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Transports the messages of the {@link InvalidationBus} between all nodes of a cluster.
+ * <p>
+ * Implementations are registered as parts (using {@link sirius.kernel.di.std.Register}) and selected via
+ * <tt>cache-coherence.transport</tt> in the system config. A transport only moves opaque messages, the encoding
+ * and the filtering of messages sent by the local node is handled by the bus.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public interface InvalidationTransport extends Named {
+
+    /**
+     * Registers a receiver which is invoked for each message received by this transport.
+     * <p>
+     * Note that a receiver will also be notified about messages sent by the local node, if the transport is
+     * able to receive them.
+     *
+     * @param receiver the receiver to notify
+     * @throws IOException in case of an error while setting up the transport
+     */
+    void subscribe(Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * Removes a receiver previously registered via {@link #subscribe(java.util.function.Consumer)}.
+     *
+     * @param receiver the receiver to remove
+     */
+    void unsubscribe(Consumer<byte[]> receiver);
+
+    /**
+     * Sends the given message to all nodes.
+     *
+     * @param message the message to send
+     * @throws IOException in case of an error while sending the message
+     */
+    void send(byte[] message) throws IOException;
+}
@@ -0,0 +1,59 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers invalidation messages to all receivers within the same JVM.
+ * <p>
+ * This can be used to run several {@link InvalidationBus} instances within one process (e.g. in tests). Messages
+ * are delivered synchronously by the sending thread.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Register
+public class LoopbackTransport implements InvalidationTransport {
+
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "loopback";
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> receiver) {
+        receivers.add(receiver);
+    }
+
+    @Override
+    public void unsubscribe(Consumer<byte[]> receiver) {
+        receivers.remove(receiver);
+    }
+
+    @Override
+    public void send(byte[] message) {
+        for (Consumer<byte[]> receiver : receivers) {
+            try {
+                receiver.accept(message.clone());
+            } catch (Throwable e) {
+                Exceptions.handle(CacheManager.LOG, e);
+            }
+        }
+    }
+}
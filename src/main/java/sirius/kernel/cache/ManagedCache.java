@@ -9,21 +9,40 @@
 package sirius.kernel.cache;
 
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Maps;
+import sirius.kernel.async.Async;
 import sirius.kernel.commons.Callback;
 import sirius.kernel.commons.Tuple;
+import sirius.kernel.di.std.Part;
 import sirius.kernel.extensions.Extension;
 import sirius.kernel.extensions.Extensions;
-import sirius.kernel.health.Counter;
 import sirius.kernel.health.Exceptions;
+import sirius.kernel.health.Histogram;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Implementation of <tt>Cache</tt> used by the <tt>CacheManager</tt>
@@ -40,21 +59,78 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
     protected List<Long> hitRateHistory = new ArrayList<Long>(MAX_HISTORY);
 
     protected int maxSize;
+    protected long maxWeight;
+    protected final Weigher<K, V> weigher;
+    protected final AtomicLong weight = new AtomicLong();
     protected ValueComputer<K, V> computer;
     protected com.google.common.cache.Cache<K, CacheEntry<K, V>> data;
-    protected Counter hits = new Counter();
-    protected Counter misses = new Counter();
+    protected final LongAdder hits = new LongAdder();
+    protected final LongAdder offHeapHits = new LongAdder();
+    protected final LongAdder misses = new LongAdder();
+    protected final LongAdder coalescedLoads = new LongAdder();
+    protected final LongAdder loadSuccesses = new LongAdder();
+    protected final LongAdder loadFailures = new LongAdder();
+    protected final LongAdder totalLoadTime = new LongAdder();
+    protected final Histogram loadTimes = new Histogram();
+    protected final Map<EvictionCause, LongAdder> evictions = new EnumMap<>(EvictionCause.class);
+
+    /*
+     * Snapshot of the statistics at the end of the last eviction run. The counters are never reset, but the
+     * difference to this snapshot is reported by getUses, getHitRate and getCoalescedLoads.
+     */
+    protected volatile CacheStats windowStart;
     protected Date lastEvictionRun = null;
     protected final String name;
     protected long timeToLive;
     protected final ValueVerifier<V> verifier;
     protected long verificationInterval;
     protected Callback<Tuple<K, V>> removeListener;
+    protected boolean coalesceLoads;
+    protected long refreshAhead;
+    protected int evictionBudget;
+
+    /*
+     * Contains the keys of all entries with a max age, ordered by their expiry
+     */
+    protected final ExpiryQueue<K> expiryQueue = new ExpiryQueue<>();
+
+    /*
+     * Optional second tier which keeps entries evicted from the heap in serialized form
+     */
+    protected OffHeapStore<K, V> offHeap;
+
+    /*
+     * Contains all computations which are currently in flight. Concurrent misses for the same key wait for the
+     * computation registered here instead of invoking the ValueComputer themselves.
+     */
+    protected final ConcurrentMap<K, FutureTask<CacheEntry<K, V>>> loads = Maps.newConcurrentMap();
+
+    /*
+     * Maps each tag to the keys of all entries carrying it. Each set is only modified within compute(..) of the
+     * ConcurrentHashMap and therefore guarded by its lock.
+     */
+    protected final ConcurrentHashMap<String, Set<K>> tagIndex = new ConcurrentHashMap<>();
+
+    /*
+     * Distributes invalidations to other nodes
+     */
+    @Part
+    private static InvalidationBus invalidationBus;
 
     private static final String EXTENSION_TYPE_CACHE = "cache";
     private static final String CONFIG_KEY_MAX_SIZE = "maxSize";
+    private static final String CONFIG_KEY_MAX_WEIGHT = "maxWeight";
     private static final String CONFIG_KEY_TTL = "ttl";
     private static final String CONFIG_KEY_VERIFICATION = "verification";
+    private static final String CONFIG_KEY_COALESCE_LOADS = "coalesceLoads";
+    private static final String CONFIG_KEY_REFRESH_AHEAD = "refreshAhead";
+    private static final String CONFIG_KEY_OFF_HEAP_SIZE = "offHeapSize";
+    private static final String CONFIG_KEY_EVICTION_BUDGET = "evictionBudget";
+
+    /*
+     * Executor category used to refresh entries which are about to expire or to be verified
+     */
+    private static final String REFRESH_EXECUTOR = "cache-refresh";
 
     /**
      * Creates a new cache. This is not intended to be called outside of <tt>CacheManager</tt>.
@@ -62,13 +138,20 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
      * @param name          name of the cache which is also used to fetch the config settings
      * @param valueComputer used to compute absent cache values for given keys. May be null.
      * @param verifier      used to verify cached values before they are delivered to the caller.
+     * @param weigher       used to estimate the size of each entry if <tt>maxWeight</tt> is used. May be null.
      */
     protected ManagedCache(String name,
                            @Nullable ValueComputer<K, V> valueComputer,
-                           @Nullable ValueVerifier<V> verifier) {
+                           @Nullable ValueVerifier<V> verifier,
+                           @Nullable Weigher<K, V> weigher) {
         this.name = name;
         this.computer = valueComputer;
         this.verifier = verifier;
+        this.weigher = weigher;
+        for (EvictionCause cause : EvictionCause.values()) {
+            evictions.put(cause, new LongAdder());
+        }
+        this.windowStart = getStats();
     }
 
     /*
@@ -88,7 +171,26 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
         this.verificationInterval = cacheInfo.getMilliseconds(CONFIG_KEY_VERIFICATION);
         this.timeToLive = cacheInfo.getMilliseconds(CONFIG_KEY_TTL);
         this.maxSize = cacheInfo.get(CONFIG_KEY_MAX_SIZE).asInt(100);
-        if (maxSize > 0) {
+        this.maxWeight = cacheInfo.get(CONFIG_KEY_MAX_WEIGHT).asLong(0);
+        if (maxWeight > 0 && weigher == null) {
+            CacheManager.LOG.WARN("Cache %s specifies a maxWeight but was created without a Weigher! Using maxSize...",
+                                  name);
+            maxWeight = 0;
+        }
+        this.coalesceLoads = cacheInfo.get(CONFIG_KEY_COALESCE_LOADS).asBoolean(true);
+        this.refreshAhead = cacheInfo.getMilliseconds(CONFIG_KEY_REFRESH_AHEAD);
+        this.evictionBudget = cacheInfo.get(CONFIG_KEY_EVICTION_BUDGET).asInt(10000);
+        long offHeapSize = cacheInfo.get(CONFIG_KEY_OFF_HEAP_SIZE).asLong(0);
+        if (offHeapSize > 0 && (maxSize > 0 || maxWeight > 0)) {
+            this.offHeap = createOffHeapStore(offHeapSize * 1024 * 1024);
+        }
+        if (maxWeight > 0) {
+            this.data = CacheBuilder.newBuilder()
+                                    .maximumWeight(maxWeight)
+                                    .weigher((K key, CacheEntry<K, V> entry) -> entry.getWeight())
+                                    .removalListener(this)
+                                    .build();
+        } else if (maxSize > 0) {
             this.data = CacheBuilder.newBuilder().maximumSize(maxSize).removalListener(this).build();
         } else {
             this.data = CacheBuilder.newBuilder().removalListener(this).build();
@@ -105,6 +207,16 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
         return maxSize;
     }
 
+    @Override
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    @Override
+    public long getWeight() {
+        return weight.get();
+    }
+
     @Override
     public int getSize() {
         if (data == null) {
@@ -115,14 +227,57 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
 
     @Override
     public long getUses() {
-        return hits.getCount() + misses.getCount();
+        return getWindowStats().getRequestCount();
     }
 
     @Override
     public Long getHitRate() {
-        long h = hits.getCount();
-        long m = misses.getCount();
-        return h + m == 0L ? 0L : Math.round(100d * (double) h / (double) (h + m));
+        return Math.round(getWindowStats().getHitRate());
+    }
+
+    @Override
+    public int getOffHeapSize() {
+        return offHeap == null ? 0 : offHeap.size();
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        return offHeap == null ? 0 : offHeap.getUsedBytes();
+    }
+
+    @Override
+    public long getOffHeapHits() {
+        return offHeapHits.sum();
+    }
+
+    @Override
+    public long getCoalescedLoads() {
+        return getWindowStats().getCoalescedLoadCount();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        Map<EvictionCause, Long> evictionCounts = new EnumMap<>(EvictionCause.class);
+        for (Map.Entry<EvictionCause, LongAdder> entry : evictions.entrySet()) {
+            evictionCounts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new CacheStats(hits.sum(),
+                              offHeapHits.sum(),
+                              misses.sum(),
+                              coalescedLoads.sum(),
+                              loadSuccesses.sum(),
+                              loadFailures.sum(),
+                              totalLoadTime.sum(),
+                              loadTimes.getPercentile(95),
+                              loadTimes.getMax(),
+                              evictionCounts);
+    }
+
+    /*
+     * Returns the statistics since the last eviction run or clear
+     */
+    private CacheStats getWindowStats() {
+        return getStats().minus(windowStart);
     }
 
     @Override
@@ -143,36 +298,68 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
         if (hitRateHistory.size() > MAX_HISTORY) {
             hitRateHistory.remove(0);
         }
-        hits.reset();
-        misses.reset();
+        windowStart = getStats();
+        loadTimes.reset();
         lastEvictionRun = new Date();
-        if (timeToLive <= 0) {
-            return;
+        expireEntries(System.currentTimeMillis());
+    }
+
+    /*
+     * Removes outdated entries. Only keys which are due are visited (see ExpiryQueue) and at most evictionBudget of
+     * them are processed per call, so that large caches don't block the timer. This is invoked by the
+     * CacheExpiryTimer every ten seconds.
+     */
+    int expireEntries(long now) {
+        if (data == null) {
+            return 0;
         }
-        // Remove all outdated entries...
-        long now = System.currentTimeMillis();
-        int numEvicted = 0;
-        Iterator<Entry<K, CacheEntry<K, V>>> iter = data.asMap().entrySet().iterator();
-        while (iter.hasNext()) {
-            Entry<K, CacheEntry<K, V>> next = iter.next();
-            if (next.getValue().getMaxAge() > now) {
-                iter.remove();
-                numEvicted++;
+        int numEvicted = expiryQueue.expire(now, evictionBudget, key -> {
+            CacheEntry<K, V> entry = data.asMap().get(key);
+            if (entry == null) {
+                return expireOffHeap(key, now);
             }
-        }
+            return entry.getMaxAge() > 0
+                   && entry.getMaxAge() <= now
+                   && evict(entry, EvictionCause.EXPIRED);
+        });
         if (numEvicted > 0 && CacheManager.LOG.isFINE()) {
             CacheManager.LOG.FINE("Evicted %d entries from %s", numEvicted, name);
         }
+        return numEvicted;
+    }
+
+    /*
+     * Removes the entry for the given key from the off heap tier, if it is stored there and expired. Entries moved
+     * off heap remain in the expiry queue, so that they are removed in time rather than when the slab is recycled.
+     */
+    private boolean expireOffHeap(K key, long now) {
+        if (offHeap == null || !offHeap.expire(key, now)) {
+            return false;
+        }
+        evictions.get(EvictionCause.EXPIRED).increment();
+        return true;
     }
 
     @Override
     public void clear() {
+        clearLocal();
+        publish(InvalidationBus.Operation.CLEAR, null);
+    }
+
+    /*
+     * Clears this cache without notifying other nodes
+     */
+    void clearLocal() {
         if (data == null) {
             return;
         }
         data.asMap().clear();
-        misses.reset();
-        hits.reset();
+        if (offHeap != null) {
+            offHeap.clear();
+        }
+        tagIndex.clear();
+        expiryQueue.clear();
+        windowStart = getStats();
         lastEvictionRun = new Date();
     }
 
@@ -186,7 +373,7 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
         if (data == null) {
             return false;
         }
-        return data.asMap().containsKey(key);
+        return data.asMap().containsKey(key) || (offHeap != null && offHeap.contains(key));
     }
 
     @Override
@@ -200,37 +387,12 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
                 init();
             }
 
-            long now = System.currentTimeMillis();
-            CacheEntry<K, V> entry = data.getIfPresent(key);
-
-            if (entry != null) {
-                // Verify age of entry
-                if (entry.getMaxAge() > 0 && entry.getMaxAge() < now) {
-                    data.invalidate(key);
-                    entry = null;
-                    // Apply verifier if present
-                } else if (verifier != null && entry != null && verificationInterval > 0 && entry.getNextVerification() < now) {
-                    if (!verifier.valid(entry.getValue())) {
-                        data.invalidate(key);
-                        entry = null;
-                    }
-                }
-            }
-
-            if (entry != null) {
-                // Entry was found (and verified) - increment statistics
-                hits.inc();
-                entry.getHits().inc();
-            } else {
+            CacheEntry<K, V> entry = lookup(key, computer, System.currentTimeMillis());
+            if (entry == null) {
                 // No entry was found, try to compute one if possible
-                misses.inc();
+                misses.increment();
                 if (computer != null) {
-                    V value = computer.compute(key);
-                    entry = new CacheEntry<K, V>(key,
-                                                 value,
-                                                 timeToLive > 0 ? timeToLive + System.currentTimeMillis() : 0,
-                                                 verificationInterval + System.currentTimeMillis());
-                    data.put(key, entry);
+                    entry = load(key, computer);
                 }
             }
 
@@ -245,6 +407,390 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
         }
     }
 
+    @Override
+    public Map<K, V> getAll(Collection<K> keys) {
+        return getAll(keys, this.computer);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<K, V> getAll(Collection<K> keys, @Nullable ValueComputer<K, V> computer) {
+        try {
+            if (keys.isEmpty()) {
+                return Maps.newLinkedHashMap();
+            }
+            if (data == null) {
+                init();
+            }
+
+            long now = System.currentTimeMillis();
+            Map<K, V> found = Maps.newHashMap();
+            List<K> missing = new ArrayList<>();
+            for (K key : new LinkedHashSet<>(keys)) {
+                if (key == null) {
+                    continue;
+                }
+                CacheEntry<K, V> entry = lookup(key, computer, now);
+                if (entry != null) {
+                    found.put(key, entry.getValue());
+                } else {
+                    misses.increment();
+                    missing.add(key);
+                }
+            }
+
+            if (!missing.isEmpty() && computer != null) {
+                if (computer instanceof BulkValueComputer) {
+                    // Resolve all missing keys with one call...
+                    Map<K, V> computed = computeAll((BulkValueComputer<K, V>) computer, missing);
+                    for (K key : missing) {
+                        if (computed.containsKey(key)) {
+                            V value = computed.get(key);
+                            found.put(key, storeEntry(key, value, tagsFor(computer, key, value)).getValue());
+                        }
+                    }
+                } else {
+                    for (K key : missing) {
+                        CacheEntry<K, V> entry = load(key, computer);
+                        if (entry != null) {
+                            found.put(key, entry.getValue());
+                        }
+                    }
+                }
+            }
+
+            // Deliver the result in the order of the given keys
+            Map<K, V> result = Maps.newLinkedHashMap();
+            for (K key : keys) {
+                if (key != null && found.containsKey(key)) {
+                    result.put(key, found.get(key));
+                }
+            }
+            return result;
+        } catch (Throwable e) {
+            throw Exceptions.handle(CacheManager.LOG, e);
+        }
+    }
+
+    /*
+     * Returns the entry for the given key if it is present and still valid. Outdated entries or those rejected
+     * by the verifier are removed. Hits are counted here, misses have to be counted by the caller.
+     */
+    @Nullable
+    private CacheEntry<K, V> lookup(K key, @Nullable ValueComputer<K, V> computer, long now) {
+        CacheEntry<K, V> entry = data.getIfPresent(key);
+        boolean promoted = false;
+        if (entry == null && offHeap != null) {
+            entry = promote(key);
+            promoted = entry != null;
+        }
+
+        if (entry != null) {
+            // Verify age of entry
+            if (entry.getMaxAge() > 0 && entry.getMaxAge() < now) {
+                evict(entry, EvictionCause.EXPIRED);
+                entry = null;
+                // Apply verifier if present
+            } else if (verifier != null && verificationInterval > 0 && entry.getNextVerification() < now) {
+                if (!verifier.valid(entry.getValue())) {
+                    evict(entry, EvictionCause.VERIFICATION);
+                    entry = null;
+                } else {
+                    entry.setNextVerification(now + verificationInterval);
+                }
+            }
+        }
+
+        if (entry != null) {
+            // Entry was found (and verified) - increment statistics
+            hits.increment();
+            if (promoted) {
+                offHeapHits.increment();
+            }
+            entry.getHits().inc();
+            if (refreshAhead > 0) {
+                refreshIfNecessary(entry, computer, now);
+            }
+        }
+
+        return entry;
+    }
+
+    /*
+     * Computes the value for the given key. If another thread is already computing a value for this key, we wait
+     * for its result instead of invoking the computer again (single-flight). A failed computation is reported to
+     * all threads waiting for this key, but is never cached, so that the next access will retry.
+     */
+    private CacheEntry<K, V> load(K key, ValueComputer<K, V> computer) throws Exception {
+        if (!coalesceLoads) {
+            return computeEntry(key, computer);
+        }
+        FutureTask<CacheEntry<K, V>> task = new FutureTask<>(() -> computeEntry(key, computer));
+        FutureTask<CacheEntry<K, V>> inFlight = loads.putIfAbsent(key, task);
+        if (inFlight != null) {
+            coalescedLoads.increment();
+            return awaitLoad(key, computer, inFlight);
+        }
+        try {
+            task.run();
+        } finally {
+            loads.remove(key, task);
+        }
+        return awaitLoad(key, computer, task);
+    }
+
+    /*
+     * Moves the entry for the given key from the off heap store back into the heap
+     */
+    @Nullable
+    private CacheEntry<K, V> promote(K key) {
+        CacheEntry<K, V> entry = offHeap.take(key);
+        if (entry == null) {
+            return null;
+        }
+        // If another thread stored a new value in the meantime, we prefer that one...
+        weigh(entry);
+        CacheEntry<K, V> current = data.asMap().putIfAbsent(key, entry);
+        if (current != null) {
+            weight.addAndGet(-entry.getWeight());
+            return current;
+        }
+        if (entry.getMaxAge() > 0) {
+            expiryQueue.schedule(key, entry.getMaxAge());
+        }
+        return entry;
+    }
+
+    /*
+     * Schedules an asynchronous refresh if the given entry is within the refresh-ahead window of either its max age
+     * or its next verification. The stale entry is still served to the caller. As the refresh is registered like
+     * any other load, concurrent misses for the same key will wait for it instead of computing the value again.
+     */
+    private void refreshIfNecessary(CacheEntry<K, V> entry, @Nullable ValueComputer<K, V> computer, long now) {
+        boolean recompute = computer != null && entry.getMaxAge() > 0 && entry.getMaxAge() - refreshAhead < now;
+        boolean verify = verifier != null
+                         && verificationInterval > 0
+                         && entry.getNextVerification() - refreshAhead < now;
+        if (!recompute && !verify) {
+            return;
+        }
+
+        K key = entry.getKey();
+        FutureTask<CacheEntry<K, V>> task = new FutureTask<>(() -> {
+            if (recompute) {
+                return computeEntry(key, computer);
+            }
+            if (verifier.valid(entry.getValue())) {
+                entry.setNextVerification(System.currentTimeMillis() + verificationInterval);
+                return entry;
+            }
+            if (computer != null) {
+                return computeEntry(key, computer);
+            }
+            evict(entry, EvictionCause.VERIFICATION);
+            return null;
+        });
+        if (loads.putIfAbsent(key, task) != null) {
+            // There is already a computation in flight for this key...
+            return;
+        }
+
+        Async.executor(REFRESH_EXECUTOR).fork(() -> {
+            try {
+                task.run();
+            } finally {
+                loads.remove(key, task);
+            }
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                Exceptions.handle(CacheManager.LOG, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).dropOnOverload(() -> {
+            // The entry will be computed or verified inline once it expires...
+            loads.remove(key, task);
+            task.cancel(false);
+        }).execute();
+    }
+
+    /*
+     * Invokes the computer and stores the resulting entry in the cache
+     */
+    private CacheEntry<K, V> computeEntry(K key, ValueComputer<K, V> computer) {
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = computer.compute(key);
+        } catch (RuntimeException | Error e) {
+            recordLoad(start, false);
+            throw e;
+        }
+        recordLoad(start, true);
+        return storeEntry(key, value, tagsFor(computer, key, value));
+    }
+
+    /*
+     * Invokes the bulk computer for the given keys and records the load statistics
+     */
+    private Map<K, V> computeAll(BulkValueComputer<K, V> computer, List<K> keys) {
+        long start = System.nanoTime();
+        try {
+            Map<K, V> result = computer.computeAll(keys);
+            recordLoad(start, true);
+            return result;
+        } catch (RuntimeException | Error e) {
+            recordLoad(start, false);
+            throw e;
+        }
+    }
+
+    /*
+     * Records the duration and outcome of a computation which started at the given nano timestamp
+     */
+    private void recordLoad(long start, boolean success) {
+        long duration = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        totalLoadTime.add(duration);
+        loadTimes.add(duration);
+        if (success) {
+            loadSuccesses.increment();
+        } else {
+            loadFailures.increment();
+        }
+    }
+
+    /*
+     * Removes the given entry (if it is still present) and records the reason for its removal
+     */
+    private boolean evict(CacheEntry<K, V> entry, EvictionCause cause) {
+        entry.setEvictionCause(cause);
+        return data.asMap().remove(entry.getKey(), entry);
+    }
+
+    /*
+     * Determines the tags to attach to a computed value
+     */
+    @SuppressWarnings("unchecked")
+    private Collection<String> tagsFor(ValueComputer<K, V> computer, K key, @Nullable V value) {
+        if (computer instanceof TaggingValueComputer) {
+            return ((TaggingValueComputer<K, V>) computer).getTags(key, value);
+        }
+        return Collections.emptyList();
+    }
+
+    /*
+     * Creates a new entry for the given key and value and stores it in the cache
+     */
+    private CacheEntry<K, V> storeEntry(K key, @Nullable V value, Collection<String> tags) {
+        if (offHeap != null) {
+            offHeap.remove(key);
+        }
+        CacheEntry<K, V> entry = new CacheEntry<K, V>(key,
+                                                      value,
+                                                      timeToLive > 0 ? timeToLive + System.currentTimeMillis() : 0,
+                                                      verificationInterval + System.currentTimeMillis());
+        entry.setTags(tags);
+        for (String tag : entry.getTags()) {
+            tagIndex.compute(tag, (t, keys) -> {
+                Set<K> result = keys == null ? new HashSet<>() : keys;
+                result.add(key);
+                return result;
+            });
+        }
+        weigh(entry);
+        if (entry.getMaxAge() > 0) {
+            expiryQueue.schedule(key, entry.getMaxAge());
+        }
+        data.put(key, entry);
+        return entry;
+    }
+
+    /*
+     * Removes the given key from the index of the given tags. If the key is still present in the cache with one of
+     * these tags (e.g. because the entry was replaced by one with the same tags), it remains in the respective index.
+     */
+    private void unindex(K key, Set<String> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        CacheEntry<K, V> current = data.asMap().get(key);
+        for (String tag : tags) {
+            if (current == null || !current.getTags().contains(tag)) {
+                tagIndex.computeIfPresent(tag, (t, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+            }
+        }
+    }
+
+    /*
+     * Determines why the given entry was removed, as the reported cause is EXPLICIT for removals due to the ttl
+     * or a failed verification
+     */
+    private EvictionCause determineEvictionCause(CacheEntry<K, V> entry, RemovalCause cause) {
+        if (entry.getEvictionCause() != null) {
+            return entry.getEvictionCause();
+        }
+        switch (cause) {
+            case REPLACED:
+                return EvictionCause.REPLACED;
+            case SIZE:
+                return EvictionCause.SIZE;
+            case EXPIRED:
+                return EvictionCause.EXPIRED;
+            case COLLECTED:
+                return EvictionCause.COLLECTED;
+            default:
+                return EvictionCause.EXPLICIT;
+        }
+    }
+
+    /*
+     * Removes the given entry from the expiry queue. If the entry was replaced by one which is scheduled in the
+     * same bucket, the key has to remain in the queue.
+     */
+    private void unschedule(CacheEntry<K, V> entry) {
+        if (entry.getMaxAge() <= 0) {
+            return;
+        }
+        CacheEntry<K, V> current = data.asMap().get(entry.getKey());
+        expiryQueue.unschedule(entry.getKey(), entry.getMaxAge(), current == null ? 0 : current.getMaxAge());
+    }
+
+    /*
+     * Determines the weight of the given entry and adds it to the total weight of the cache. The weight is
+     * subtracted again once the entry is removed (see onRemoval).
+     */
+    private void weigh(CacheEntry<K, V> entry) {
+        if (weigher != null) {
+            entry.setWeight(Math.max(0, weigher.weigh(entry.getKey(), entry.getValue())));
+            weight.addAndGet(entry.getWeight());
+        }
+    }
+
+    /*
+     * Waits for the given load to complete and unwraps any failure which occurred
+     */
+    private CacheEntry<K, V> awaitLoad(K key, ValueComputer<K, V> computer, FutureTask<CacheEntry<K, V>> task)
+            throws Exception {
+        try {
+            return task.get();
+        } catch (CancellationException e) {
+            // A refresh which we waited for was dropped due to system overload...
+            return computeEntry(key, computer);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     @Override
     public void put(K key, V value) {
         if (key == null) {
@@ -253,19 +799,75 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
         if (data == null) {
             init();
         }
-        CacheEntry<K, V> cv = new CacheEntry<K, V>(key,
-                                                   value,
-                                                   timeToLive > 0 ? timeToLive + System.currentTimeMillis() : 0,
-                                                   verificationInterval + System.currentTimeMillis());
-        data.put(key, cv);
+        storeEntry(key, value, Collections.emptyList());
+    }
+
+    @Override
+    public void put(K key, V value, Collection<String> tags) {
+        if (key == null) {
+            throw new IllegalArgumentException("key must not be null");
+        }
+        if (data == null) {
+            init();
+        }
+        storeEntry(key, value, tags);
+    }
+
+    @Override
+    public void putAll(Map<K, V> entries) {
+        for (Entry<K, V> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
     }
 
     @Override
     public void remove(K key) {
+        removeLocal(key);
+        publish(InvalidationBus.Operation.REMOVE, key);
+    }
+
+    /*
+     * Removes the given key without notifying other nodes
+     */
+    void removeLocal(K key) {
         if (data == null) {
             return;
         }
         data.invalidate(key);
+        if (offHeap != null) {
+            offHeap.remove(key);
+        }
+    }
+
+    @Override
+    public void invalidateTag(String tag) {
+        invalidateTagLocal(tag);
+        publish(InvalidationBus.Operation.TAG, tag);
+    }
+
+    /*
+     * Removes all entries with the given tag without notifying other nodes
+     */
+    void invalidateTagLocal(String tag) {
+        if (data == null) {
+            return;
+        }
+        Set<K> keys = tagIndex.remove(tag);
+        if (keys != null) {
+            for (K key : keys) {
+                removeLocal(key);
+            }
+        }
+    }
+
+    /*
+     * Distributes an invalidation to all other nodes. Note that this also happens if this cache wasn't used
+     * locally yet, as other nodes might still contain the affected entries.
+     */
+    private void publish(InvalidationBus.Operation operation, @Nullable Object argument) {
+        if (invalidationBus != null) {
+            invalidationBus.publish(new InvalidationBus.Invalidation(name, operation, argument));
+        }
     }
 
     @Override
@@ -281,7 +883,11 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
         if (data == null) {
             init();
         }
-        return new ArrayList<>(data.asMap().values());
+        List<CacheEntry<K, V>> result = new ArrayList<>(data.asMap().values());
+        if (offHeap != null) {
+            result.addAll(offHeap.getContents());
+        }
+        return result;
     }
 
     @Override
@@ -294,21 +900,65 @@ class ManagedCache<K, V> implements Cache<K, V>, RemovalListener<Object, Object>
         return hitRateHistory;
     }
 
+    /*
+     * Creates the off heap tier which uses at most the given number of bytes
+     */
+    OffHeapStore<K, V> createOffHeapStore(long maxBytes) {
+        OffHeapStore<K, V> store = new OffHeapStore<>(maxBytes, this::unindex, this::onOffHeapEviction);
+        store.restoreEvictedValues(removeListener != null);
+        return store;
+    }
+
+    /*
+     * Invoked for entries which are evicted from the off heap tier, as their slab was recycled
+     */
+    private void onOffHeapEviction(CacheEntry<K, V> entry) {
+        unindex(entry.getKey(), entry.getTags());
+        unschedule(entry);
+        evictions.get(EvictionCause.SIZE).increment();
+        notifyRemoveListener(entry);
+    }
+
+    /*
+     * Invokes the removal listener (if present) for the given entry
+     */
+    private void notifyRemoveListener(CacheEntry<K, V> entry) {
+        if (removeListener != null) {
+            try {
+                removeListener.invoke(Tuple.create(entry.getKey(), entry.getValue()));
+            } catch (Throwable e) {
+                Exceptions.handle(e);
+            }
+        }
+    }
+
     @Override
     public Cache<K, V> onRemove(Callback<Tuple<K, V>> onRemoveCallback) {
         removeListener = onRemoveCallback;
+        if (offHeap != null) {
+            // Values evicted from the off heap tier have to be deserialized for the listener...
+            offHeap.restoreEvictedValues(onRemoveCallback != null);
+        }
         return this;
     }
 
     @Override
     public void onRemoval(RemovalNotification<Object, Object> notification) {
-        if (removeListener != null) {
-            try {
-                @SuppressWarnings("unchecked") CacheEntry<K, V> entry = (CacheEntry<K, V>) notification.getValue();
-                removeListener.invoke(Tuple.create(entry.getKey(), entry.getValue()));
-            } catch (Throwable e) {
-                Exceptions.handle(e);
+        @SuppressWarnings("unchecked") CacheEntry<K, V> removedEntry = (CacheEntry<K, V>) notification.getValue();
+        if (removedEntry != null) {
+            weight.addAndGet(-removedEntry.getWeight());
+        }
+        if (offHeap != null && notification.getCause() == RemovalCause.SIZE) {
+            // Entries evicted from the heap are moved into the second tier and therefore not really removed...
+            if (offHeap.store(removedEntry)) {
+                return;
             }
         }
+        if (removedEntry != null) {
+            unindex(removedEntry.getKey(), removedEntry.getTags());
+            unschedule(removedEntry);
+            evictions.get(determineEvictionCause(removedEntry, notification.getCause())).increment();
+            notifyRemoveListener(removedEntry);
+        }
     }
 }
@@ -0,0 +1,190 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import sirius.kernel.commons.Strings;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.Exceptions;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Sends invalidation messages as UDP multicast datagrams.
+ * <p>
+ * The group, port and time to live are specified in <tt>cache-coherence.multicast</tt>. By default a TTL of 0
+ * is used, which keeps all datagrams on the local machine. This permits to run several nodes on one machine,
+ * for a real cluster, the TTL has to be increased. The group is joined on the network interface given in
+ * <tt>cache-coherence.multicast.interface</tt> or on the first multicast capable interface which is up.
+ * <p>
+ * As UDP doesn't guarantee delivery, caches should still specify a reasonable <tt>ttl</tt> so that missed
+ * invalidations don't keep stale data forever.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Register
+public class MulticastTransport implements InvalidationTransport {
+
+    /*
+     * Max size of a received datagram
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    @ConfigValue("cache-coherence.multicast.group")
+    private String group;
+
+    @ConfigValue("cache-coherence.multicast.port")
+    private int port;
+
+    @ConfigValue("cache-coherence.multicast.ttl")
+    private int ttl;
+
+    @ConfigValue("cache-coherence.multicast.interface")
+    private String networkInterface;
+
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+    private DatagramChannel channel;
+    private InetSocketAddress groupAddress;
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "multicast";
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<byte[]> receiver) throws IOException {
+        receivers.add(receiver);
+        if (channel == null) {
+            open();
+        }
+    }
+
+    @Override
+    public synchronized void unsubscribe(Consumer<byte[]> receiver) {
+        receivers.remove(receiver);
+        if (receivers.isEmpty() && channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Exceptions.ignore(e);
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void send(byte[] message) throws IOException {
+        DatagramChannel currentChannel;
+        synchronized (this) {
+            if (channel == null) {
+                open();
+            }
+            currentChannel = channel;
+        }
+        currentChannel.send(ByteBuffer.wrap(message), groupAddress);
+    }
+
+    /*
+     * Joins the multicast group and starts a daemon thread which receives all messages
+     */
+    private void open() throws IOException {
+        InetAddress address = InetAddress.getByName(group);
+        groupAddress = new InetSocketAddress(address, port);
+        NetworkInterface joinInterface = determineInterface();
+        DatagramChannel newChannel = DatagramChannel.open(address instanceof Inet6Address ?
+                                                          StandardProtocolFamily.INET6 :
+                                                          StandardProtocolFamily.INET);
+        try {
+            newChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            newChannel.bind(new InetSocketAddress(port));
+            newChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, joinInterface);
+            newChannel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+            // Other nodes on the same machine have to receive our messages as well...
+            newChannel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+            newChannel.join(address, joinInterface);
+        } catch (IOException e) {
+            newChannel.close();
+            throw e;
+        }
+        channel = newChannel;
+
+        Thread receiverThread = new Thread(() -> receive(newChannel), "cache-coherence-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    /*
+     * Returns the configured network interface or the first one which is up and supports multicast
+     */
+    private NetworkInterface determineInterface() throws IOException {
+        if (Strings.isFilled(networkInterface)) {
+            NetworkInterface result = NetworkInterface.getByName(networkInterface);
+            if (result == null) {
+                throw new IOException("Unknown network interface: " + networkInterface);
+            }
+            return result;
+        }
+        NetworkInterface loopback = null;
+        for (NetworkInterface candidate : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (candidate.isUp() && candidate.supportsMulticast()) {
+                if (!candidate.isLoopback()) {
+                    return candidate;
+                }
+                loopback = candidate;
+            }
+        }
+        if (loopback == null) {
+            throw new IOException("No network interface supports multicast");
+        }
+        return loopback;
+    }
+
+    /*
+     * Receives datagrams until the given channel is closed
+     */
+    private void receive(DatagramChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                byte[] message = new byte[buffer.remaining()];
+                buffer.get(message);
+                for (Consumer<byte[]> receiver : receivers) {
+                    receiver.accept(message);
+                }
+            } catch (IOException e) {
+                if (!channel.isOpen()) {
+                    // Thrown once the socket is closed...
+                    Exceptions.ignore(e);
+                } else {
+                    Exceptions.handle(CacheManager.LOG, e);
+                }
+            } catch (Throwable e) {
+                Exceptions.handle(CacheManager.LOG, e);
+            }
+        }
+    }
+}
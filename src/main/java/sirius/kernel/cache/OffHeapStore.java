@@ -0,0 +1,440 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import sirius.kernel.health.Exceptions;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Second storage tier of a {@link ManagedCache} which keeps serialized values outside of the java heap.
+ * <p>
+ * Entries which are evicted from the heap due to size constraints are serialized and appended to one of several
+ * direct <tt>ByteBuffer</tt> slabs. Only the key and the location of its data remain on the heap. Once all slabs are
+ * full, the oldest slab is recycled and all entries stored in it are evicted. Therefore this store behaves like a
+ * FIFO cache with the granularity of a slab, while the heap tier in front of it still provides LRU semantics.
+ * <p>
+ * Entries are promoted back to the heap tier when accessed (see {@link #take(Object)}). Only serializable values
+ * can be stored, all others are simply dropped when evicted from the heap.
+ *
+ * @param <K> the type of the keys used by this store
+ * @param <V> the type of the values supported by this store
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+class OffHeapStore<K, V> {
+
+    /*
+     * Max size of a single slab. Entries larger than this will not be stored
+     */
+    private static final int MAX_SLAB_SIZE = 1024 * 1024;
+
+    /*
+     * Min number of slabs to use, so that recycling a slab only drops a part of the store
+     */
+    private static final int MIN_SLABS = 4;
+
+    /*
+     * Describes where the data of an entry is located and carries the metadata of its CacheEntry
+     */
+    private static class Slot {
+        int slab;
+        int offset;
+        int length;
+        long created;
+        long maxAge;
+        long nextVerification;
+        long offHeapHits;
+        Set<String> tags;
+    }
+
+    /*
+     * Describes an entry which was evicted by recycling its slab. The data is only copied if the evicted values
+     * have to be restored (see restoreEvictedValues).
+     */
+    private static class Evicted<K> {
+        final K key;
+        final Slot slot;
+        final byte[] data;
+
+        Evicted(K key, Slot slot, @Nullable byte[] data) {
+            this.key = key;
+            this.slot = slot;
+            this.data = data;
+        }
+    }
+
+    private final int slabSize;
+    private final ByteBuffer[] slabs;
+    private final List<List<K>> slabKeys;
+    private int currentSlab = 0;
+    private final Map<K, Slot> index = Maps.newHashMap();
+    private long usedBytes = 0;
+    private final BiConsumer<K, Set<String>> dropHandler;
+    private final Consumer<CacheEntry<K, V>> evictionHandler;
+    private volatile boolean restoreEvictedValues;
+
+    /**
+     * Creates a new store which uses at most the given number of bytes outside of the heap.
+     *
+     * @param maxBytes        the max number of bytes to allocate
+     * @param dropHandler     invoked with the key and tags of each entry which is removed or expires (but not for
+     *                        entries which are promoted via {@link #take(Object)})
+     * @param evictionHandler invoked for each entry which is evicted as its slab is recycled. The value of the
+     *                        given entry is only restored if enabled via {@link #restoreEvictedValues(boolean)}
+     */
+    OffHeapStore(long maxBytes,
+                 BiConsumer<K, Set<String>> dropHandler,
+                 Consumer<CacheEntry<K, V>> evictionHandler) {
+        this.dropHandler = dropHandler;
+        this.evictionHandler = evictionHandler;
+        int numSlabs = (int) Math.max(MIN_SLABS, maxBytes / MAX_SLAB_SIZE);
+        this.slabSize = (int) Math.min(MAX_SLAB_SIZE, maxBytes / MIN_SLABS);
+        this.slabs = new ByteBuffer[numSlabs];
+        this.slabKeys = Lists.newArrayListWithCapacity(numSlabs);
+        for (int i = 0; i < numSlabs; i++) {
+            slabKeys.add(Lists.newArrayList());
+        }
+    }
+
+    /**
+     * Determines if the values of evicted entries are restored before they are passed to the eviction handler.
+     * <p>
+     * As this requires to deserialize all values of a recycled slab, this should only be enabled if the values are
+     * actually required (e.g. by a removal listener).
+     *
+     * @param restoreEvictedValues <tt>true</tt> to restore the values of evicted entries, <tt>false</tt> to pass
+     *                             entries without values to the eviction handler
+     */
+    void restoreEvictedValues(boolean restoreEvictedValues) {
+        this.restoreEvictedValues = restoreEvictedValues;
+    }
+
+    /**
+     * Serializes the given entry and stores it outside of the heap.
+     * <p>
+     * If the store is full, the entries of the oldest slab are evicted and passed to the eviction handler.
+     *
+     * @param entry the entry to store
+     * @return <tt>true</tt> if the entry was stored, <tt>false</tt> if the value cannot be serialized or is too large
+     */
+    boolean store(CacheEntry<K, V> entry) {
+        V value = entry.getValue();
+        if (value != null && !(value instanceof Serializable)) {
+            return false;
+        }
+        byte[] data = serialize(value);
+        if (data == null || data.length > slabSize) {
+            return false;
+        }
+
+        List<Evicted<K>> evicted = Lists.newArrayList();
+        synchronized (this) {
+            ByteBuffer slab = slabFor(data.length, evicted);
+            Slot slot = new Slot();
+            slot.slab = currentSlab;
+            slot.offset = slab.position();
+            slot.length = data.length;
+            slot.created = entry.created;
+            slot.maxAge = entry.getMaxAge();
+            slot.nextVerification = entry.getNextVerification();
+            slot.offHeapHits = entry.getOffHeapHits();
+            slot.tags = entry.getTags();
+            slab.put(data);
+            slabKeys.get(currentSlab).add(entry.getKey());
+            Slot previous = index.put(entry.getKey(), slot);
+            if (previous != null) {
+                usedBytes -= previous.length;
+            }
+            usedBytes += data.length;
+        }
+        for (Evicted<K> evictedEntry : evicted) {
+            evict(evictedEntry);
+        }
+        return true;
+    }
+
+    /*
+     * Returns the slab into which the given number of bytes can be written. Recycles the next slab if the current
+     * one is full, in which case its entries are added to the given list.
+     */
+    private ByteBuffer slabFor(int length, List<Evicted<K>> evicted) {
+        ByteBuffer slab = slabs[currentSlab];
+        if (slab != null && slab.remaining() >= length) {
+            return slab;
+        }
+        if (slab != null) {
+            currentSlab = (currentSlab + 1) % slabs.length;
+        }
+        if (slabs[currentSlab] == null) {
+            slabs[currentSlab] = ByteBuffer.allocateDirect(slabSize);
+        } else {
+            recycle(currentSlab, evicted);
+        }
+        return slabs[currentSlab];
+    }
+
+    /*
+     * Removes all entries stored in the given slab so that it can be overwritten. The removed entries are added to
+     * the given list, so that the eviction handler can be invoked once the lock was released.
+     */
+    private void recycle(int slabIndex, List<Evicted<K>> evicted) {
+        boolean copyData = restoreEvictedValues;
+        for (K key : slabKeys.get(slabIndex)) {
+            Slot slot = index.get(key);
+            if (slot != null && slot.slab == slabIndex) {
+                index.remove(key);
+                usedBytes -= slot.length;
+                evicted.add(new Evicted<>(key, slot, copyData ? read(slot) : null));
+            }
+        }
+        slabKeys.get(slabIndex).clear();
+        slabs[slabIndex].clear();
+    }
+
+    /**
+     * Removes the entry for the given key and returns it as new <tt>CacheEntry</tt>.
+     *
+     * @param key the key to lookup
+     * @return the entry stored for the given key or <tt>null</tt> if there is none
+     */
+    @Nullable
+    CacheEntry<K, V> take(K key) {
+        byte[] data;
+        Slot slot;
+        synchronized (this) {
+            slot = index.remove(key);
+            if (slot == null) {
+                return null;
+            }
+            usedBytes -= slot.length;
+            data = read(slot);
+        }
+        CacheEntry<K, V> entry = restore(key, slot, data);
+        if (entry != null) {
+            entry.setOffHeapHits(slot.offHeapHits + 1);
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the entry for the given key if it expired at the given point in time.
+     * <p>
+     * The drop handler is invoked for the removed entry.
+     *
+     * @param key the key to check
+     * @param now the current timestamp
+     * @return <tt>true</tt> if an expired entry was removed, <tt>false</tt> otherwise
+     */
+    boolean expire(K key, long now) {
+        Slot slot;
+        synchronized (this) {
+            slot = index.get(key);
+            if (slot == null || slot.maxAge <= 0 || slot.maxAge > now) {
+                return false;
+            }
+            index.remove(key);
+            usedBytes -= slot.length;
+        }
+        dropHandler.accept(key, slot.tags);
+        return true;
+    }
+
+    /**
+     * Restores all entries stored in this store without removing them.
+     * <p>
+     * As all values have to be deserialized, this is quite expensive and only intended for diagnostic purposes.
+     * Entries which cannot be restored are skipped.
+     *
+     * @return a list of all entries in this store
+     */
+    List<CacheEntry<K, V>> getContents() {
+        List<CacheEntry<K, V>> result = Lists.newArrayList();
+        List<K> keys;
+        synchronized (this) {
+            keys = Lists.newArrayList(index.keySet());
+        }
+        for (K key : keys) {
+            CacheEntry<K, V> entry = peek(key);
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Restores the entry for the given key without removing it
+     */
+    @Nullable
+    private CacheEntry<K, V> peek(K key) {
+        byte[] data;
+        Slot slot;
+        synchronized (this) {
+            slot = index.get(key);
+            if (slot == null) {
+                return null;
+            }
+            data = read(slot);
+        }
+        CacheEntry<K, V> entry = restore(key, slot, data);
+        if (entry != null) {
+            entry.setOffHeapHits(slot.offHeapHits);
+            entry.setOffHeap(true);
+        }
+        return entry;
+    }
+
+    /*
+     * Passes the given evicted entry to the eviction handler. If its value cannot be restored, the entry is reported
+     * without a value.
+     */
+    private void evict(Evicted<K> evicted) {
+        CacheEntry<K, V> entry = evicted.data == null ? null : restore(evicted.key, evicted.slot, evicted.data);
+        if (entry == null) {
+            entry = new CacheEntry<>(evicted.key, null, evicted.slot.maxAge, evicted.slot.nextVerification);
+            entry.setCreated(evicted.slot.created);
+            entry.setTags(evicted.slot.tags);
+        }
+        entry.setOffHeapHits(evicted.slot.offHeapHits);
+        evictionHandler.accept(entry);
+    }
+
+    /*
+     * Copies the data of the given slot. Must be called while holding the lock.
+     */
+    private byte[] read(Slot slot) {
+        byte[] data = new byte[slot.length];
+        ByteBuffer view = slabs[slot.slab].duplicate();
+        view.position(slot.offset);
+        view.get(data);
+        return data;
+    }
+
+    /*
+     * Creates a new CacheEntry from the given slot and its data
+     */
+    @Nullable
+    private CacheEntry<K, V> restore(K key, Slot slot, byte[] data) {
+        try {
+            @SuppressWarnings("unchecked") V value = (V) deserialize(data);
+            CacheEntry<K, V> entry = new CacheEntry<>(key, value, slot.maxAge, slot.nextVerification);
+            entry.setCreated(slot.created);
+            entry.setTags(slot.tags);
+            return entry;
+        } catch (Exception e) {
+            Exceptions.handle(CacheManager.LOG, e);
+            return null;
+        }
+    }
+
+    /**
+     * Determines if an entry for the given key is present.
+     *
+     * @param key the key to check
+     * @return <tt>true</tt> if an entry is present, <tt>false</tt> otherwise
+     */
+    synchronized boolean contains(K key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Removes the entry for the given key.
+     * <p>
+     * The used space is not reclaimed until the slab is recycled.
+     *
+     * @param key the key to remove
+     */
+    void remove(K key) {
+        Slot slot;
+        synchronized (this) {
+            slot = index.remove(key);
+            if (slot == null) {
+                return;
+            }
+            usedBytes -= slot.length;
+        }
+        dropHandler.accept(key, slot.tags);
+    }
+
+    /**
+     * Removes all entries. The allocated slabs are kept for re-use.
+     * <p>
+     * Note that the drop handler is not invoked for the removed entries.
+     */
+    synchronized void clear() {
+        index.clear();
+        for (int i = 0; i < slabs.length; i++) {
+            slabKeys.get(i).clear();
+            if (slabs[i] != null) {
+                slabs[i].clear();
+            }
+        }
+        currentSlab = 0;
+        usedBytes = 0;
+    }
+
+    /**
+     * Returns the number of entries in this store.
+     *
+     * @return the number of entries stored
+     */
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the number of bytes occupied by live entries.
+     *
+     * @return the number of bytes used by entries which are still accessible
+     */
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /*
+     * Serializes the given value into a byte array
+     */
+    @Nullable
+    private byte[] serialize(@Nullable Object value) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeObject(value);
+            }
+            return out.toByteArray();
+        } catch (Exception e) {
+            // The value claims to be serializable but one of its fields isn't - so we cannot store it...
+            Exceptions.ignore(e);
+            return null;
+        }
+    }
+
+    /*
+     * Restores a value from the given byte array
+     */
+    private Object deserialize(byte[] data) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+
+/**
+ * Computes a value if it is not found in a cache and determines the tags to attach to it
+ * <p>
+ * The tags can later be used to remove all entries carrying them via {@link Cache#invalidateTag(String)}. This
+ * can be combined with {@link BulkValueComputer} by implementing both interfaces.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public interface TaggingValueComputer<K, V> extends ValueComputer<K, V> {
+
+    /**
+     * Determines the tags to attach to a computed value
+     *
+     * @param key   the key for which the value was computed
+     * @param value the computed value
+     * @return the tags to attach to the cache entry
+     */
+    @Nonnull
+    Collection<String> getTags(@Nonnull K key, @Nullable V value);
+
+}
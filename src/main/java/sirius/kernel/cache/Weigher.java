@@ -0,0 +1,38 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the size of a cached value
+ * <p>
+ * Can be supplied to {@link CacheManager#createCache(String, ValueComputer, ValueVerifier, Weigher)} when creating
+ * a cache which contains values of greatly varying sizes. In combination with the config setting <tt>maxWeight</tt>
+ * the cache is then limited by the total weight of its entries rather than by their number.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * Computes the weight of the given entry
+     * <p>
+     * The unit of the weight is up to the implementation (e.g. the estimated number of bytes), as long as it is the
+     * same unit used by <tt>maxWeight</tt>. The weight of an entry is computed once, when it is put into the cache.
+     *
+     * @param key   the key of the entry
+     * @param value the value of the entry
+     * @return the estimated (non-negative) weight of the entry
+     */
+    int weigh(@Nonnull K key, @Nullable V value);
+
+}
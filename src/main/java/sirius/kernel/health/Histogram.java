@@ -0,0 +1,154 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.health;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the distribution of values (e.g. durations) in exponentially growing buckets.
+ * <p>
+ * Each bucket covers values up to twice as large as the previous one. Therefore percentiles are only estimated
+ * with an error of at most a factor of two, while recording a value is cheap and requires constant memory.
+ * <p>
+ * In contrast to {@link Counter} and {@link Average}, this class is thread-safe and uses striped counters, so that
+ * many threads can record values without contention.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public class Histogram {
+
+    /*
+     * Bucket i contains all values v with 2^(i-1) <= v < 2^i, bucket 0 contains all values <= 0
+     */
+    private static final int NUM_BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[NUM_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates a new and empty histogram.
+     */
+    public Histogram() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the given value.
+     *
+     * @param value the value to record. Negative values are treated as 0.
+     */
+    public void add(long value) {
+        long effectiveValue = Math.max(0, value);
+        buckets[bucketOf(effectiveValue)].increment();
+        count.increment();
+        sum.add(effectiveValue);
+        max.accumulateAndGet(effectiveValue, Math::max);
+    }
+
+    /*
+     * Determines the index of the bucket for the given value
+     */
+    private static int bucketOf(long value) {
+        return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values recorded since the last reset
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return the sum of all values recorded since the last reset
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the average of all recorded values.
+     *
+     * @return the average of all values or 0 if no values were recorded
+     */
+    public double getAvg() {
+        long n = count.sum();
+        return n == 0 ? 0d : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the largest value recorded since the last reset
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimates the value below which the given percentage of all values lie.
+     * <p>
+     * The result is the upper bound of the bucket containing the percentile, but never larger than {@link
+     * #getMax()}.
+     *
+     * @param percentile the percentile to compute (e.g. 95 or 99.9)
+     * @return the estimated percentile or 0 if no values were recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(n * Math.min(100d, Math.max(0d, percentile)) / 100d);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= threshold) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /*
+     * Returns the largest value contained in the given bucket
+     */
+    private static long upperBound(int bucket) {
+        return bucket >= NUM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    /**
+     * Removes all recorded values.
+     * <p>
+     * Values which are recorded concurrently might be lost or only partially removed.
+     */
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return getCount() + " values (avg: " + getAvg() + ", 95%: " + getPercentile(95) + ", max: " + getMax() + ")";
+    }
+}
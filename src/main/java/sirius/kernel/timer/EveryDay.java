@@ -17,11 +17,10 @@ package sirius.kernel.timer;
  * is determined by the config value named in {@link #getConfigKeyName()}. (The full path in the config
  * will be <tt>timer.daily.[getConfigKeyName]</tt>).
  * <p>
- * The call interval will not be exactly one day, as the time of invocation will vary from day to day. The system
- * ensures, that the method is called within the given hour of day, and not executed more than once per day. However,
- * if the system is restarted within the given hour, the method might be called twice, as the time of call is not
- * persisted over restarts. If a more precise behaviour is required, the subclass must take care of handling such
- * cases.
+ * The method is called at the start of the given hour of day (delayed by a random jitter of up to
+ * <tt>timer.maxJitter</tt>). However, if the system is restarted right after the call, the method might be called
+ * twice, as the time of call is not persisted over restarts. If a more precise behaviour is required, the subclass
+ * must take care of handling such cases.
  *
  * @author Andreas Haufler (aha@scireum.de)
  * @since 2013/08
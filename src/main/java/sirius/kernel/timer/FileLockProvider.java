@@ -0,0 +1,133 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer;
+
+import com.google.common.base.Charsets;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Register;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.time.Duration;
+
+/**
+ * Stores leases in files of a local (or shared) directory.
+ * <p>
+ * Each lock is represented by a file in the directory given by <tt>timer.cluster.file.directory</tt>. Accesses are
+ * synchronized using OS level file locks. Therefore this provider can be used to run several nodes on one machine
+ * (e.g. for testing). Whether it works across machines depends on the file lock support of the shared file system.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Register
+public class FileLockProvider implements LockProvider {
+
+    @ConfigValue("timer.cluster.file.directory")
+    private String directory;
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Nullable
+    @Override
+    public synchronized Lease tryAcquire(String lockName, String owner, Duration leaseDuration) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(getFile(lockName), "rw")) {
+            FileLock lock = file.getChannel().lock();
+            try {
+                long now = System.currentTimeMillis();
+                Lease current = read(file, lockName);
+                long token = 1;
+                if (current != null) {
+                    boolean valid = !current.isExpired(now);
+                    if (valid && !Strings.areEqual(owner, current.getOwner())) {
+                        return null;
+                    }
+                    token = valid ? current.getFencingToken() : current.getFencingToken() + 1;
+                }
+                Lease lease = new Lease(lockName, owner, token, now + leaseDuration.toMillis());
+                write(file, lease);
+                return lease;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release(Lease lease) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(getFile(lease.getLockName()), "rw")) {
+            FileLock lock = file.getChannel().lock();
+            try {
+                Lease current = read(file, lease.getLockName());
+                if (current != null
+                    && Strings.areEqual(lease.getOwner(), current.getOwner())
+                    && current.getFencingToken() == lease.getFencingToken()) {
+                    write(file, new Lease(lease.getLockName(), lease.getOwner(), lease.getFencingToken(), 0));
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /*
+     * Determines the file representing the given lock
+     */
+    private File getFile(String lockName) throws IOException {
+        File dir = Strings.isEmpty(directory) ?
+                   new File(System.getProperty("java.io.tmpdir"), "sirius-locks") :
+                   new File(directory);
+        if (!dir.exists() && !dir.mkdirs() && !dir.exists()) {
+            throw new IOException("Cannot create the lock directory: " + dir.getAbsolutePath());
+        }
+        return new File(dir, lockName.replaceAll("[^a-zA-Z0-9._-]", "_") + ".lock");
+    }
+
+    /*
+     * Reads the lease stored in the given file as "token;expires;owner"
+     */
+    @Nullable
+    private Lease read(RandomAccessFile file, String lockName) throws IOException {
+        if (file.length() == 0) {
+            return null;
+        }
+        byte[] data = new byte[(int) file.length()];
+        file.seek(0);
+        file.readFully(data);
+        String[] parts = new String(data, Charsets.UTF_8).trim().split(";", 3);
+        if (parts.length != 3) {
+            throw new IOException("Malformed lock file for: " + lockName);
+        }
+        try {
+            return new Lease(lockName, parts[2], Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed lock file for: " + lockName, e);
+        }
+    }
+
+    /*
+     * Replaces the contents of the given file by the given lease
+     */
+    private void write(RandomAccessFile file, Lease lease) throws IOException {
+        String contents = lease.getFencingToken() + ";" + lease.getExpires() + ";" + lease.getOwner();
+        byte[] data = contents.getBytes(Charsets.UTF_8);
+        file.seek(0);
+        file.write(data);
+        file.setLength(data.length);
+    }
+}
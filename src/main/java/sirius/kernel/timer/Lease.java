@@ -0,0 +1,93 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer;
+
+/**
+ * Represents the permission of a node to execute a task which runs once per cluster.
+ * <p>
+ * A lease is granted by a {@link LockProvider} until it expires. The fencing token is incremented each time the
+ * lease is granted to another owner (or after it expired). Therefore a storage system can reject writes of a node
+ * which lost its lease (e.g. due to a long GC pause), by rejecting tokens older than the latest one it has seen.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public class Lease {
+
+    private final String lockName;
+    private final String owner;
+    private final long fencingToken;
+    private final long expires;
+
+    /**
+     * Creates a new lease.
+     *
+     * @param lockName     the name of the lock
+     * @param owner        the node which holds the lease
+     * @param fencingToken the fencing token of the lease
+     * @param expires      the point in time (in epoch millis) at which the lease expires
+     */
+    public Lease(String lockName, String owner, long fencingToken, long expires) {
+        this.lockName = lockName;
+        this.owner = owner;
+        this.fencingToken = fencingToken;
+        this.expires = expires;
+    }
+
+    /**
+     * Returns the name of the lock.
+     *
+     * @return the name of the lock this lease was granted for
+     */
+    public String getLockName() {
+        return lockName;
+    }
+
+    /**
+     * Returns the owner of the lease.
+     *
+     * @return the identifier of the node which holds the lease
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Returns the fencing token of the lease.
+     *
+     * @return a number which is larger than the token of any previous owner of the lock
+     */
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    /**
+     * Returns the point in time at which the lease expires.
+     *
+     * @return the expiry of the lease as epoch millis
+     */
+    public long getExpires() {
+        return expires;
+    }
+
+    /**
+     * Determines if the lease is expired at the given point in time.
+     *
+     * @param now the point in time to check as epoch millis
+     * @return <tt>true</tt> if the lease is expired, <tt>false</tt> otherwise
+     */
+    public boolean isExpired(long now) {
+        return now >= expires;
+    }
+
+    @Override
+    public String toString() {
+        return lockName + " (Owner: " + owner + ", Token: " + fencingToken + ")";
+    }
+}
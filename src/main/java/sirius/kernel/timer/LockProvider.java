@@ -0,0 +1,53 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer;
+
+import sirius.kernel.di.std.Named;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Grants leases for tasks which must only be executed once per cluster (see {@link OncePerCluster}).
+ * <p>
+ * Implementations are registered as parts (using {@link sirius.kernel.di.std.Register}) and selected via
+ * <tt>timer.cluster.lockProvider</tt> in the system config. All nodes of a cluster must use the same provider,
+ * which has to store the leases in a place shared by all nodes (e.g. a database or a shared file system).
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public interface LockProvider extends Named {
+
+    /**
+     * Tries to acquire or renew the lease for the given lock.
+     * <p>
+     * The lease is granted if it is not held by another owner or if the lease of the other owner is expired. If the
+     * given owner already holds the lease, it is extended and keeps its fencing token.
+     *
+     * @param lockName      the name of the lock
+     * @param owner         the identifier of the node trying to acquire the lease
+     * @param leaseDuration the duration for which the lease is granted
+     * @return the granted lease or <tt>null</tt> if the lease is held by another owner
+     * @throws IOException in case of an error while accessing the shared storage
+     */
+    @Nullable
+    Lease tryAcquire(String lockName, String owner, Duration leaseDuration) throws IOException;
+
+    /**
+     * Releases the given lease, so that other nodes can acquire it without waiting for it to expire.
+     * <p>
+     * If the lease is no longer held by its owner, nothing happens.
+     *
+     * @param lease the lease to release
+     * @throws IOException in case of an error while accessing the shared storage
+     */
+    void release(Lease lease) throws IOException;
+}
@@ -0,0 +1,43 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link TimedTask} which must only be executed by one node of the cluster.
+ * <p>
+ * Before executing such a task, the {@link TimerService} tries to acquire a {@link Lease} for it from the
+ * {@link LockProvider} selected via <tt>timer.cluster.lockProvider</tt>. Nodes which cannot acquire the lease skip
+ * the execution. The node holding the lease renews it with each execution, therefore it stays the leader as long
+ * as it executes the task at least once per <tt>timer.cluster.lease</tt>. While the task is running, the lease is
+ * renewed every third of this duration, so that long running tasks don't lose it. If no lock provider is configured,
+ * the local node is considered to be the only node of the cluster.
+ * <p>
+ * The lease of the current execution (and therefore its fencing token) can be obtained via
+ * {@link TimerService#getCurrentLease()}. If the lease could not be renewed in time (e.g. due to a long GC pause),
+ * another node might have taken over. In this case the lease is dropped and an empty optional is returned.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface OncePerCluster {
+
+    /**
+     * Determines the name of the lock which has to be held to execute the task.
+     *
+     * @return the name of the lock. If empty, the name of the class is used.
+     */
+    String value() default "";
+}
@@ -0,0 +1,232 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer;
+
+import sirius.kernel.commons.Strings;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * Determines the points in time at which a {@link ScheduledTask} is executed.
+ * <p>
+ * A schedule is either a fixed rate created via {@link #every(Duration)} or a cron expression parsed via
+ * {@link #parse(String)}. In both cases the executions are aligned to the wall clock (in the default time zone of
+ * the JVM): A schedule running every ten minutes fires at :00, :10, :20 and so on, independently of when the system
+ * was started or how long previous executions took.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@ParametersAreNonnullByDefault
+public class Schedule {
+
+    /*
+     * Limits the search for the next matching point in time of a cron expression, which might never match
+     * (e.g. "0 0 31 2 *")
+     */
+    private static final int MAX_YEARS_TO_SEARCH = 5;
+
+    private final String description;
+    private final long interval;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    private Schedule(String description, long interval) {
+        this.description = description;
+        this.interval = interval;
+        this.minutes = null;
+        this.hours = null;
+        this.daysOfMonth = null;
+        this.months = null;
+        this.daysOfWeek = null;
+        this.anyDayOfMonth = true;
+        this.anyDayOfWeek = true;
+    }
+
+    private Schedule(String description, String[] fields) {
+        this.description = description;
+        this.interval = 0;
+        this.minutes = parseField(description, fields[0], 0, 59);
+        this.hours = parseField(description, fields[1], 0, 23);
+        this.daysOfMonth = parseField(description, fields[2], 1, 31);
+        this.months = parseField(description, fields[3], 1, 12);
+        this.daysOfWeek = parseField(description, fields[4], 0, 7);
+        // Both 0 and 7 represent sunday
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        this.anyDayOfMonth = "*".equals(fields[2]);
+        this.anyDayOfWeek = "*".equals(fields[4]);
+    }
+
+    /**
+     * Creates a schedule which fires in fixed intervals.
+     * <p>
+     * The executions are aligned to multiples of the interval since midnight (or since the epoch for intervals
+     * longer than a day).
+     *
+     * @param interval the interval between two executions. Must be at least one millisecond.
+     * @return a schedule firing in the given interval
+     */
+    @Nonnull
+    public static Schedule every(Duration interval) {
+        if (interval.toMillis() < 1) {
+            throw new IllegalArgumentException("The interval of a schedule must be at least one millisecond.");
+        }
+        return new Schedule("every " + interval, interval.toMillis());
+    }
+
+    /**
+     * Parses the given cron expression.
+     * <p>
+     * An expression consists of five fields separated by whitespace: <tt>minute</tt> (0-59), <tt>hour</tt> (0-23),
+     * <tt>day of month</tt> (1-31), <tt>month</tt> (1-12) and <tt>day of week</tt> (0-7, where 0 and 7 are sunday).
+     * Each field is either <tt>*</tt>, a number, a range like <tt>1-5</tt> or a comma separated list of these. A
+     * step can be appended to <tt>*</tt> or a range like <tt>*&#47;15</tt>. As in a classic crontab, if both day
+     * fields are restricted, a day matches if either one matches.
+     * <p>
+     * Example: <tt>30 2 * * 1-5</tt> fires at 02:30 from monday to friday.
+     *
+     * @param expression the cron expression to parse
+     * @return the schedule represented by the given expression
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    @Nonnull
+    public static Schedule parse(String expression) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException(Strings.apply(
+                    "Invalid cron expression '%s': Expected five fields (minute hour day-of-month month day-of-week)",
+                    expression));
+        }
+        return new Schedule(expression.trim(), fields);
+    }
+
+    /*
+     * Parses a field of a cron expression into the set of matching values
+     */
+    private static BitSet parseField(String expression, String field, int min, int max) {
+        BitSet result = new BitSet(max + 1);
+        try {
+            for (String part : field.split(",")) {
+                int step = 1;
+                int slash = part.indexOf('/');
+                if (slash >= 0) {
+                    step = Integer.parseInt(part.substring(slash + 1));
+                    part = part.substring(0, slash);
+                }
+                int from;
+                int to;
+                if ("*".equals(part)) {
+                    from = min;
+                    to = max;
+                } else if (part.contains("-")) {
+                    from = Integer.parseInt(part.substring(0, part.indexOf('-')));
+                    to = Integer.parseInt(part.substring(part.indexOf('-') + 1));
+                } else {
+                    from = Integer.parseInt(part);
+                    to = slash >= 0 ? max : from;
+                }
+                if (from < min || to > max || from > to || step < 1) {
+                    throw new IllegalArgumentException();
+                }
+                for (int i = from; i <= to; i += step) {
+                    result.set(i);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(Strings.apply("Invalid cron expression '%s': Cannot parse '%s' (%d-%d)",
+                                                             expression,
+                                                             field,
+                                                             min,
+                                                             max));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the next point in time at which this schedule fires.
+     *
+     * @param after the point in time (as epoch millis) after which the next execution is searched
+     * @return the next execution (as epoch millis) which is strictly after the given one, or <tt>-1</tt> if the
+     * schedule never fires again
+     */
+    public long nextExecution(long after) {
+        if (interval > 0) {
+            return nextInterval(after);
+        }
+        return nextCronMatch(after);
+    }
+
+    /*
+     * Computes the next multiple of the interval in local time
+     */
+    private long nextInterval(long after) {
+        ZoneOffset offset = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(after));
+        long offsetMillis = offset.getTotalSeconds() * 1000L;
+        long local = after + offsetMillis;
+        long next = (Math.floorDiv(local, interval) + 1) * interval;
+        return next - offsetMillis;
+    }
+
+    /*
+     * Searches the next minute matching the cron expression by skipping non matching months, days and hours
+     */
+    private long nextCronMatch(long after) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(after), zone)
+                                          .truncatedTo(ChronoUnit.MINUTES)
+                                          .plusMinutes(1);
+        LocalDateTime limit = time.plusYears(MAX_YEARS_TO_SEARCH);
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time.atZone(zone).toInstant().toEpochMilli();
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Determines if the day of the given time matches the day-of-month and day-of-week fields
+     */
+    private boolean matchesDay(LocalDateTime time) {
+        boolean dayOfMonth = daysOfMonth.get(time.getDayOfMonth());
+        boolean dayOfWeek = daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dayOfMonth && dayOfWeek;
+        }
+        return dayOfMonth || dayOfWeek;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
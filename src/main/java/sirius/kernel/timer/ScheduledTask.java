@@ -0,0 +1,49 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+
+/**
+ * Parts registered for this interface will be invoked as determined by their {@link Schedule}.
+ * <p>
+ * An implementing class can be inserted into the {@link sirius.kernel.di.GlobalContext} using the
+ * {@link sirius.kernel.di.std.Register} annotation. Once the system is started, the method
+ * {@link TimedTask#runTimer()} is invoked each time the schedule returned by {@link #getSchedule()} fires. The
+ * schedule is fetched once when the {@link TimerService} starts.
+ * <p>
+ * As schedules are aligned to the wall clock, many tasks might fire at the same time (e.g. each full hour). Tasks
+ * which don't need to run at an exact point in time can therefore specify a jitter, by which their execution is
+ * randomly delayed.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public interface ScheduledTask extends TimedTask {
+
+    /**
+     * Returns the schedule which determines when the task is executed.
+     *
+     * @return the schedule of this task, either created via {@link Schedule#every(Duration)} or
+     * {@link Schedule#parse(String)}
+     */
+    @Nonnull
+    Schedule getSchedule();
+
+    /**
+     * Returns the max duration by which each execution is randomly delayed.
+     *
+     * @return the max jitter applied to each execution. By default no jitter is applied.
+     */
+    @Nonnull
+    default Duration getMaxJitter() {
+        return Duration.ZERO;
+    }
+}
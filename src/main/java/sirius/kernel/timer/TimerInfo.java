@@ -0,0 +1,314 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer;
+
+import sirius.kernel.commons.Strings;
+import sirius.kernel.health.Average;
+import sirius.kernel.health.Counter;
+import sirius.kernel.nls.NLS;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Provides the state of a timer scheduled by the {@link TimerService}.
+ * <p>
+ * A timer represents a {@link TimedTask} along with the schedule it is executed by. A task which implements several
+ * timer interfaces (e.g. <tt>EveryMinute</tt> and <tt>EveryHour</tt>) is represented by one timer per interface.
+ * <p>
+ * A timer is executed at most once at a time: If its previous execution is still waiting or running when it fires,
+ * the execution is skipped and counted (see {@link #getSkipped()}).
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+public class TimerInfo {
+
+    private final Class<? extends TimedTask> type;
+    private final TimedTask task;
+    private final Schedule schedule;
+    private final long maxJitter;
+    private final Runnable onExecution;
+    private volatile long nextExecution;
+    private volatile long lastExecution;
+
+    /*
+     * Records how many milliseconds each execution started after its planned point in time (including its jitter)
+     */
+    private final Average lateness = new Average();
+    private volatile long maxLateness;
+
+    /*
+     * Determines if an execution is currently pending or running
+     */
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter executions = new Counter();
+    private final Counter skipped = new Counter();
+    private final Average duration = new Average();
+    private volatile long lastDuration = -1;
+
+    /*
+     * Contains the name of the lock required to execute the task or null, if it runs on every node
+     */
+    private final String lockName;
+    private final Counter followerSkips = new Counter();
+    private volatile Lease lease;
+
+    TimerInfo(Class<? extends TimedTask> type,
+              TimedTask task,
+              Schedule schedule,
+              Duration maxJitter,
+              @Nullable Runnable onExecution) {
+        this.type = type;
+        this.task = task;
+        this.schedule = schedule;
+        this.maxJitter = Math.max(0, maxJitter.toMillis());
+        this.onExecution = onExecution;
+        OncePerCluster oncePerCluster = task.getClass().getAnnotation(OncePerCluster.class);
+        if (oncePerCluster == null) {
+            this.lockName = null;
+        } else if (Strings.isEmpty(oncePerCluster.value())) {
+            this.lockName = task.getClass().getName();
+        } else {
+            this.lockName = oncePerCluster.value();
+        }
+    }
+
+    @Nullable
+    String getLockName() {
+        return lockName;
+    }
+
+    @Nullable
+    Lease getLease() {
+        return lease;
+    }
+
+    /*
+     * Forgets the lease once it was released or lost
+     */
+    void leaseReleased() {
+        this.lease = null;
+    }
+
+    /*
+     * Records the lease acquired for an execution or null if another node holds the lease
+     */
+    void leaseAcquired(@Nullable Lease lease) {
+        this.lease = lease;
+        if (lease == null) {
+            followerSkips.inc();
+        }
+    }
+
+    TimedTask getTask() {
+        return task;
+    }
+
+    /*
+     * Returns the timer interface (e.g. EveryMinute) by which the task is scheduled
+     */
+    Class<? extends TimedTask> getType() {
+        return type;
+    }
+
+    long getMaxJitterMillis() {
+        return maxJitter;
+    }
+
+    void setNextExecution(long nextExecution) {
+        this.nextExecution = nextExecution;
+    }
+
+    /*
+     * Marks the timer as running unless it is already running, in which case the execution is counted as skipped
+     */
+    boolean tryStart() {
+        if (running.compareAndSet(false, true)) {
+            return true;
+        }
+        skipped.inc();
+        return false;
+    }
+
+    /*
+     * Marks the timer as no longer running. A negative duration signals that the execution was dropped.
+     */
+    void completed(long durationMillis) {
+        if (durationMillis >= 0) {
+            lastDuration = durationMillis;
+            duration.addValue(durationMillis);
+        }
+        running.set(false);
+    }
+
+    /*
+     * Records an execution which started the given number of milliseconds after its planned point in time
+     */
+    void executed(long now, long delay) {
+        executions.inc();
+        lastExecution = now;
+        lateness.addValue(Math.max(0, delay));
+        maxLateness = Math.max(maxLateness, delay);
+        if (onExecution != null) {
+            onExecution.run();
+        }
+    }
+
+    /**
+     * Returns the name of the timer.
+     *
+     * @return the name of the task class along with its schedule
+     */
+    public String getName() {
+        return task.getClass().getName() + " (" + schedule + ")";
+    }
+
+    /**
+     * Returns the schedule by which the task is executed.
+     *
+     * @return the schedule of the timer
+     */
+    public Schedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Returns the timestamp of the last execution of the timer.
+     *
+     * @return a textual representation of the last execution. Returns "-" if the timer didn't run yet.
+     */
+    public String getLastExecution() {
+        return format(lastExecution);
+    }
+
+    /**
+     * Returns the timestamp of the next planned execution of the timer.
+     *
+     * @return a textual representation of the next execution (without jitter). Returns "-" if the timer isn't
+     * scheduled.
+     */
+    public String getNextExecution() {
+        return format(nextExecution);
+    }
+
+    private static String format(long timestamp) {
+        if (timestamp <= 0) {
+            return "-";
+        }
+        return NLS.toUserString(Instant.ofEpochMilli(timestamp));
+    }
+
+    /**
+     * Returns the average delay between the planned and the actual start of the recent executions.
+     *
+     * @return the average start lateness of the recent executions in milliseconds
+     */
+    public double getAverageLateness() {
+        return lateness.getAvg();
+    }
+
+    /**
+     * Returns the max delay between the planned and the actual start of an execution.
+     *
+     * @return the max start lateness of all executions in milliseconds
+     */
+    public long getMaxLateness() {
+        return maxLateness;
+    }
+
+    /**
+     * Determines if an execution of this timer is currently waiting or running.
+     *
+     * @return <tt>true</tt> if the timer is currently running, <tt>false</tt> otherwise
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Returns the number of executions of this timer.
+     *
+     * @return the number of times the timer was started
+     */
+    public long getExecutions() {
+        return executions.getCount();
+    }
+
+    /**
+     * Returns the number of executions which were skipped, as the previous execution was still running.
+     * <p>
+     * A growing number indicates that the task takes longer than its interval.
+     *
+     * @return the number of skipped executions
+     */
+    public long getSkipped() {
+        return skipped.getCount();
+    }
+
+    /**
+     * Returns the average duration of the recent executions.
+     *
+     * @return the average duration in milliseconds
+     */
+    public double getAverageDuration() {
+        return duration.getAvg();
+    }
+
+    /**
+     * Returns the duration of the last completed execution.
+     *
+     * @return the duration of the last execution in milliseconds or <tt>-1</tt> if the timer didn't complete yet
+     */
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * Determines if the task of this timer is only executed by one node of the cluster.
+     *
+     * @return <tt>true</tt> if the task is marked with {@link OncePerCluster}, <tt>false</tt> otherwise
+     */
+    public boolean isOncePerCluster() {
+        return lockName != null;
+    }
+
+    /**
+     * Determines if this node currently executes the task for the whole cluster.
+     *
+     * @return <tt>true</tt> if the task is marked with {@link OncePerCluster} and this node acquired a lease, which is
+     * not yet expired, <tt>false</tt> otherwise
+     */
+    public boolean isLeader() {
+        Lease currentLease = lease;
+        return currentLease != null && !currentLease.isExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the number of executions which were skipped, as another node held the lease of the task.
+     *
+     * @return the number of executions left to another node
+     */
+    public long getFollowerSkips() {
+        return followerSkips.getCount();
+    }
+
+    @Override
+    public String toString() {
+        return Strings.apply("%s - Last: %s, Executions: %d, Skipped: %d, Duration: %1.0f ms, Lateness: %1.0f ms",
+                             getName(),
+                             getLastExecution(),
+                             getExecutions(),
+                             getSkipped(),
+                             getAverageDuration(),
+                             getAverageLateness());
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer;
+
+import sirius.kernel.di.std.Part;
+import sirius.kernel.di.std.Register;
+import sirius.kernel.health.metrics.MetricProvider;
+import sirius.kernel.health.metrics.MetricsCollector;
+
+/**
+ * Reports the average start lateness, duration and skipped executions of each timer known to the
+ * {@link TimerService} as metrics.
+ * <p>
+ * The lateness is the delay between the planned start of an execution (including its jitter) and the point in time
+ * when the task actually started. A growing lateness indicates that the <tt>timer</tt> executor is too busy. Skipped
+ * executions indicate that a timer takes longer than its interval.
+ *
+ * @author Andreas Haufler (aha@scireum.de)
+ * @since 2015/01
+ */
+@Register
+public class TimerMetricProvider implements MetricProvider {
+
+    @Part
+    private TimerService timerService;
+
+    @Override
+    public void gather(MetricsCollector collector) {
+        for (TimerInfo timer : timerService.getTimers()) {
+            String prefix = "Timer " + timer.getName() + " - ";
+            collector.metric("timer-lateness", prefix + "Lateness", timer.getAverageLateness(), "ms");
+            collector.metric("timer-duration", prefix + "Duration", timer.getAverageDuration(), "ms");
+            collector.differentialMetric("timer-skipped-" + timer.getName(),
+                                         "timer-skipped",
+                                         prefix + "Skipped",
+                                         timer.getSkipped(),
+                                         "/min");
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package sirius.kernel.timer;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import sirius.kernel.Lifecycle;
 import sirius.kernel.Sirius;
 import sirius.kernel.async.Async;
+import sirius.kernel.async.CallContext;
+import sirius.kernel.commons.Strings;
+import sirius.kernel.di.GlobalContext;
 import sirius.kernel.di.PartCollection;
+import sirius.kernel.di.std.ConfigValue;
+import sirius.kernel.di.std.Context;
 import sirius.kernel.di.std.Parts;
 import sirius.kernel.di.std.Register;
 import sirius.kernel.health.Exceptions;
@@ -12,14 +19,35 @@ import sirius.kernel.health.Log;
 import sirius.kernel.nls.NLS;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalTime;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -27,8 +55,23 @@ import java.util.concurrent.locks.ReentrantLock;
  * Internal service which is responsible for executing timers.
  * <p>
  * Other than for statistical reasons, this class does not need to be called directly. It automatically
- * discovers all parts registered for one of the timer interfaces (<tt>EveryMinute</tt>, <tt>EveryTenMinutes</tt>,
- * <tt>EveryHour</tt>, <tt>EveryDay</tt>) and invokes them appropriately.
+ * discovers all parts registered for one of the timer interfaces (<tt>EveryTenSeconds</tt>, <tt>EveryMinute</tt>,
+ * <tt>EveryTenMinutes</tt>, <tt>EveryHour</tt>, <tt>EveryDay</tt>, <tt>ScheduledTask</tt>) and invokes them
+ * appropriately.
+ * <p>
+ * Each timer is scheduled individually and aligned to the wall clock (see {@link Schedule}): An <tt>EveryMinute</tt>
+ * task fires at the start of each minute and an <tt>EveryDay</tt> task at the start of its configured hour. The
+ * next execution is always computed from the planned one, so that slow executions or a busy timer thread don't
+ * make a timer drift. To prevent all timers from firing at exactly the same time, the built-in intervals are
+ * delayed by a random jitter of up to <tt>timer.maxJitter</tt>. The delay between the planned and the actual start
+ * of each execution is recorded per timer (see {@link #getTimers()}).
+ * <p>
+ * A scheduled execution is skipped, if the previous execution of the same timer is still waiting or running.
+ * Therefore a slow timer cannot pile up copies of itself in the <tt>timer</tt> executor.
+ * <p>
+ * Tasks marked with {@link OncePerCluster} are only executed by the node which holds their {@link Lease}. The
+ * leases are granted by the {@link LockProvider} selected via <tt>timer.cluster.lockProvider</tt>. While such a task
+ * is running, its lease is renewed every third of <tt>timer.cluster.lease</tt>.
  * <p>
  * To access this class, a <tt>Part</tt> annotation can be used on a field of type <tt>TimerService</tt>.
  *
@@ -43,51 +86,48 @@ public class TimerService implements Lifecycle {
 
     @Parts(EveryTenSeconds.class)
     private PartCollection<EveryTenSeconds> everyTenSeconds;
-    private long lastTenSecondsExecution = 0;
+    private volatile long lastTenSecondsExecution = 0;
 
     @Parts(EveryMinute.class)
     private PartCollection<EveryMinute> everyMinute;
-    private long lastOneMinuteExecution = 0;
+    private volatile long lastOneMinuteExecution = 0;
 
     @Parts(EveryTenMinutes.class)
     private PartCollection<EveryTenMinutes> everyTenMinutes;
-    private long lastTenMinutesExecution = 0;
+    private volatile long lastTenMinutesExecution = 0;
 
     @Parts(EveryHour.class)
     private PartCollection<EveryHour> everyHour;
-    private long lastHourExecution = 0;
+    private volatile long lastHourExecution = 0;
 
     @Parts(EveryDay.class)
     private PartCollection<EveryDay> everyDay;
 
-    private Timer timer;
-    private ReentrantLock timerLock = new ReentrantLock();
+    @Parts(ScheduledTask.class)
+    private PartCollection<ScheduledTask> scheduledTasks;
 
-    private class InnerTimerTask extends TimerTask {
+    @ConfigValue("timer.maxJitter")
+    private Duration maxJitter;
 
-        @Override
-        public void run() {
-            try {
-                runTenSecondTimers();
-                if (TimeUnit.MINUTES.convert(System.currentTimeMillis() - lastOneMinuteExecution,
-                        TimeUnit.MILLISECONDS) >= 1) {
-                    runOneMinuteTimers();
-                }
-                if (TimeUnit.MINUTES.convert(System.currentTimeMillis() - lastTenMinutesExecution,
-                        TimeUnit.MILLISECONDS) >= 10) {
-                    runTenMinuteTimers();
-                }
-                if (TimeUnit.MINUTES.convert(System.currentTimeMillis() - lastHourExecution,
-                        TimeUnit.MILLISECONDS) >= 60) {
-                    runOneHourTimers();
-                    runEveryDayTimers(false);
-                }
-            } catch (Throwable t) {
-                Exceptions.handle(LOG, t);
-            }
-        }
+    @ConfigValue("timer.cluster.lockProvider")
+    private String lockProviderName;
 
-    }
+    @ConfigValue("timer.cluster.lease")
+    private Duration leaseDuration;
+
+    @Context
+    private GlobalContext ctx;
+
+    /*
+     * Contains the timer executed by the current thread
+     */
+    private static final ThreadLocal<TimerInfo> currentTimer = new ThreadLocal<>();
+
+    private volatile LockProvider lockProvider;
+    private String owner;
+    private ScheduledExecutorService scheduler;
+    private List<TimerInfo> timers = Collections.emptyList();
+    private ReentrantLock timerLock = new ReentrantLock();
 
     /*
      * Used to monitor a resource for changes
@@ -96,6 +136,17 @@ public class TimerService implements Lifecycle {
         private File file;
         private long lastModified;
         private Runnable callback;
+
+        /*
+         * Determines if the resource is part of a JAR, in which case the JAR file is polled
+         */
+        private boolean inJar;
+
+        /*
+         * Contains the point in time at which a pending reload is due (or 0, if no change was reported). This is
+         * only accessed by the thread processing the events of the WatchService.
+         */
+        private long due;
     }
 
 
@@ -105,15 +156,34 @@ public class TimerService implements Lifecycle {
     private List<WatchedResource> loadedFiles = Lists.newCopyOnWriteArrayList();
 
     /*
-     * Used to frequently check loaded properties when running in DEVELOP mode.
+     * Notifies about changes of the directories containing the watched resources in DEVELOP mode. Each directory is
+     * registered once and mapped to the resources it contains.
+     */
+    private volatile WatchService watchService;
+    private final Map<Path, List<WatchedResource>> watchedDirectories = Maps.newConcurrentMap();
+
+    /*
+     * Contains the resources which cannot be watched via the WatchService (e.g. files within a JAR) and therefore
+     * are polled.
+     */
+    private List<WatchedResource> polledFiles = Lists.newCopyOnWriteArrayList();
+
+    /*
+     * Used to frequently check polled files when running in DEVELOP mode.
      */
     private Timer reloadTimer;
 
     /*
-     * Determines the interval which files are checked for update
+     * Determines the interval which polled files are checked for update
      */
     private static final int RELOAD_INTERVAL = 1000;
 
+    /*
+     * Determines how long to wait for further changes of a file before it is reloaded. Editors often write a file in
+     * several steps, which would otherwise trigger several reloads.
+     */
+    private static final int DEBOUNCE_INTERVAL = 250;
+
     /**
      * Returns the timestamp of the last execution of the 10 second timer.
      *
@@ -166,55 +236,213 @@ public class TimerService implements Lifecycle {
         return NLS.toUserString(Instant.ofEpochMilli(lastHourExecution));
     }
 
+    /**
+     * Returns all timers which are scheduled.
+     * <p>
+     * Next to the last execution, each timer provides its duration, start lateness and the number of skipped
+     * executions. Therefore timers which no longer fit into their interval can be spotted.
+     *
+     * @return a list containing a timer for each task and timer interface it implements
+     */
+    public List<TimerInfo> getTimers() {
+        return timers;
+    }
+
+    /**
+     * Returns the timers which had to skip executions as their previous execution was still running.
+     *
+     * @return a list of all timers which skipped at least one execution
+     */
+    public List<TimerInfo> getOverrunTimers() {
+        List<TimerInfo> result = Lists.newArrayList();
+        for (TimerInfo info : timers) {
+            if (info.getSkipped() > 0) {
+                result.add(info);
+            }
+        }
+        return result;
+    }
+
 
     @Override
     public void started() {
         if (Sirius.isFrameworkEnabled("kernel.timer")) {
             startTimer();
+        } else {
+            // The timers are still created, so that they can be executed manually (e.g. runOneMinuteTimers)
+            timers = Collections.unmodifiableList(createTimers());
         }
         if (Sirius.isDev()) {
             startResourceWatcher();
         }
     }
 
-    private void startResourceWatcher() {
+    /*
+     * Starts to watch all resources added so far. Resources added later are watched right away.
+     */
+    private synchronized void startResourceWatcher() {
+        if (watchService != null || reloadTimer != null) {
+            return;
+        }
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            Thread watcher = new Thread(() -> processWatchEvents(service), "Resource-Watch");
+            watcher.setDaemon(true);
+            watcher.start();
+            watchService = service;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.WARN("Cannot watch resources for changes (%s). Falling back to polling.", e.getMessage());
+        }
+        for (WatchedResource res : loadedFiles) {
+            watch(res);
+        }
+    }
+
+    /*
+     * Registers the directory of the given resource with the WatchService or falls back to polling the resource
+     */
+    private void watch(WatchedResource res) {
+        WatchService service = watchService;
+        if (service != null && !res.inJar) {
+            Path directory = res.file.getAbsoluteFile().getParentFile().toPath();
+            try {
+                synchronized (watchedDirectories) {
+                    List<WatchedResource> resources = watchedDirectories.get(directory);
+                    if (resources == null) {
+                        directory.register(service,
+                                           StandardWatchEventKinds.ENTRY_CREATE,
+                                           StandardWatchEventKinds.ENTRY_MODIFY);
+                        resources = Lists.newCopyOnWriteArrayList();
+                        watchedDirectories.put(directory, resources);
+                    }
+                    resources.add(res);
+                }
+                return;
+            } catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+                LOG.FINE("Cannot watch %s (%s). Falling back to polling.", directory, e.getMessage());
+            }
+        }
+        poll(res);
+    }
+
+    /*
+     * Adds the given resource to the polled files and starts polling if necessary
+     */
+    private synchronized void poll(WatchedResource res) {
+        polledFiles.add(res);
         if (reloadTimer == null) {
-            reloadTimer = new Timer(true);
+            reloadTimer = new Timer("Resource-Poll", true);
             reloadTimer.schedule(new TimerTask() {
                 @Override
                 public void run() {
-                    Thread.currentThread().setName("Resource-Watch");
-                    for (WatchedResource res : loadedFiles) {
-                        long lastModified = res.file.lastModified();
-                        if (lastModified > res.lastModified) {
-                            res.lastModified = res.file.lastModified();
-                            LOG.INFO("Reloading: %s", res.file.toString());
-                            try {
-                                res.callback.run();
-                            } catch (Exception e) {
-                                Exceptions.handle()
-                                        .withSystemErrorMessage("Error reloading %s: %s (%s)", res.file.toString())
-                                        .error(e)
-                                        .handle();
-                            }
-                        }
+                    for (WatchedResource polledFile : polledFiles) {
+                        reloadIfModified(polledFile);
                     }
                 }
             }, RELOAD_INTERVAL, RELOAD_INTERVAL);
         }
     }
 
+    /*
+     * Waits for changes reported by the given WatchService and reloads changed resources once no further changes
+     * were reported for DEBOUNCE_INTERVAL.
+     */
+    private void processWatchEvents(WatchService service) {
+        List<WatchedResource> pending = Lists.newArrayList();
+        try {
+            while (true) {
+                WatchKey key = pending.isEmpty() ?
+                               service.take() :
+                               service.poll(Math.max(1, nextDue(pending) - System.currentTimeMillis()),
+                                            TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    markChanges(key, pending);
+                    key.reset();
+                }
+                long now = System.currentTimeMillis();
+                Iterator<WatchedResource> iter = pending.iterator();
+                while (iter.hasNext()) {
+                    WatchedResource res = iter.next();
+                    if (res.due <= now) {
+                        iter.remove();
+                        res.due = 0;
+                        reloadIfModified(res);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Exceptions.ignore(e);
+        }
+    }
+
+    /*
+     * Marks all resources affected by the events of the given key as pending
+     */
+    private void markChanges(WatchKey key, List<WatchedResource> pending) {
+        Path directory = (Path) key.watchable();
+        List<WatchedResource> resources = watchedDirectories.get(directory);
+        if (resources == null) {
+            key.pollEvents();
+            return;
+        }
+        long due = System.currentTimeMillis() + DEBOUNCE_INTERVAL;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            for (WatchedResource res : resources) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || res.file.getName().equals(String.valueOf(event.context()))) {
+                    if (res.due == 0) {
+                        pending.add(res);
+                    }
+                    res.due = due;
+                }
+            }
+        }
+    }
+
+    private long nextDue(List<WatchedResource> pending) {
+        long result = Long.MAX_VALUE;
+        for (WatchedResource res : pending) {
+            result = Math.min(result, res.due);
+        }
+        return result;
+    }
+
+    /*
+     * Invokes the callback of the given resource if its file was modified
+     */
+    private void reloadIfModified(WatchedResource res) {
+        long lastModified = res.file.lastModified();
+        if (lastModified != res.lastModified) {
+            res.lastModified = lastModified;
+            LOG.INFO("Reloading: %s", res.file.toString());
+            try {
+                res.callback.run();
+            } catch (Exception e) {
+                Exceptions.handle()
+                        .withSystemErrorMessage("Error reloading %s: %s (%s)", res.file.toString())
+                        .error(e)
+                        .handle();
+            }
+        }
+    }
+
     private void startTimer() {
         try {
             timerLock.lock();
             try {
-                if (timer == null) {
-                    timer = new Timer(true);
-                } else {
-                    timer.cancel();
-                    timer = new Timer(true);
+                if (scheduler != null) {
+                    scheduler.shutdownNow();
+                }
+                startLockProvider();
+                scheduler = new ScheduledThreadPoolExecutor(1,
+                                                            new ThreadFactoryBuilder().setNameFormat("timer-scheduler")
+                                                                                      .setDaemon(true)
+                                                                                      .build());
+                timers = Collections.unmodifiableList(createTimers());
+                long now = System.currentTimeMillis();
+                for (TimerInfo info : timers) {
+                    scheduleNext(info, now);
                 }
-                timer.schedule(new InnerTimerTask(), 1000 * 10, 1000 * 10);
             } finally {
                 timerLock.unlock();
             }
@@ -223,22 +451,202 @@ public class TimerService implements Lifecycle {
         }
     }
 
+    /*
+     * Selects the lock provider used for tasks which run once per cluster
+     */
+    private void startLockProvider() {
+        owner = CallContext.getNodeName() + "/" + ManagementFactory.getRuntimeMXBean().getName();
+        lockProvider = null;
+        if (Strings.isEmpty(lockProviderName)) {
+            return;
+        }
+        try {
+            lockProvider = ctx.findPart(lockProviderName, LockProvider.class);
+            LOG.INFO("Electing the leader for timers which run once per cluster via: %s", lockProviderName);
+        } catch (Throwable e) {
+            Exceptions.handle()
+                      .to(LOG)
+                      .error(e)
+                      .withSystemErrorMessage("Cannot find the lock provider %s: %s (%s)", lockProviderName)
+                      .handle();
+        }
+    }
+
+    /*
+     * Creates a timer for each task and timer interface it implements
+     */
+    private List<TimerInfo> createTimers() {
+        List<TimerInfo> result = Lists.newArrayList();
+        addTimers(result, EveryTenSeconds.class, everyTenSeconds, Schedule.every(Duration.ofSeconds(10)), () -> {
+            lastTenSecondsExecution = System.currentTimeMillis();
+        });
+        addTimers(result, EveryMinute.class, everyMinute, Schedule.every(Duration.ofMinutes(1)), () -> {
+            lastOneMinuteExecution = System.currentTimeMillis();
+        });
+        addTimers(result, EveryTenMinutes.class, everyTenMinutes, Schedule.every(Duration.ofMinutes(10)), () -> {
+            lastTenMinutesExecution = System.currentTimeMillis();
+        });
+        addTimers(result, EveryHour.class, everyHour, Schedule.every(Duration.ofHours(1)), () -> {
+            lastHourExecution = System.currentTimeMillis();
+        });
+        for (EveryDay task : everyDay.getParts()) {
+            if (!Sirius.getConfig().hasPath("timer.daily." + task.getConfigKeyName())) {
+                LOG.WARN("Skipping daily timer %s as config key '%s' is missing!",
+                        task.getClass().getName(),
+                        "timer.daily." + task.getConfigKeyName());
+            } else {
+                try {
+                    int hour = Sirius.getConfig().getInt("timer.daily." + task.getConfigKeyName());
+                    result.add(new TimerInfo(EveryDay.class,
+                                             task,
+                                             Schedule.parse("0 " + hour + " * * *"),
+                                             maxJitter,
+                                             null));
+                } catch (Throwable t) {
+                    Exceptions.handle()
+                            .to(LOG)
+                            .error(t)
+                            .withSystemErrorMessage("Cannot schedule daily timer %s: %s (%s)",
+                                                    task.getClass().getName())
+                            .handle();
+                }
+            }
+        }
+        for (ScheduledTask task : scheduledTasks.getParts()) {
+            try {
+                result.add(new TimerInfo(ScheduledTask.class, task, task.getSchedule(), task.getMaxJitter(), null));
+            } catch (Throwable t) {
+                Exceptions.handle()
+                        .to(LOG)
+                        .error(t)
+                        .withSystemErrorMessage("Cannot schedule timer %s: %s (%s)", task.getClass().getName())
+                        .handle();
+            }
+        }
+        return result;
+    }
+
+    private void addTimers(List<TimerInfo> result,
+                           Class<? extends TimedTask> type,
+                           PartCollection<? extends TimedTask> tasks,
+                           Schedule schedule,
+                           Runnable onExecution) {
+        for (TimedTask task : tasks.getParts()) {
+            result.add(new TimerInfo(type, task, schedule, maxJitter, onExecution));
+        }
+    }
+
+    /*
+     * Schedules the next execution of the given timer after the given point in time (in epoch millis)
+     */
+    private void scheduleNext(TimerInfo info, long after) {
+        long planned = info.getSchedule().nextExecution(after);
+        info.setNextExecution(planned);
+        if (planned < 0) {
+            LOG.WARN("The timer %s will never be executed again!", info.getName());
+            return;
+        }
+        long jitter = info.getMaxJitterMillis() > 0 ?
+                      ThreadLocalRandom.current().nextLong(info.getMaxJitterMillis() + 1) :
+                      0;
+        long start = planned + jitter;
+        try {
+            scheduler.schedule(() -> fire(info, planned, start),
+                               Math.max(0, start - System.currentTimeMillis()),
+                               TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler was shut down
+            Exceptions.ignore(e);
+        }
+    }
+
+    /*
+     * Executes the given timer and schedules its next execution. If the scheduler (whose delays are not bound to
+     * the wall clock) woke up too early, the planned execution is still used as base, so that it isn't repeated.
+     * If executions were missed (e.g. as the system was suspended), these are skipped.
+     */
+    private void fire(TimerInfo info, long planned, long start) {
+        try {
+            executeTask(info, start);
+        } catch (Throwable t) {
+            Exceptions.handle(LOG, t);
+        }
+        scheduleNext(info, Math.max(planned, System.currentTimeMillis()));
+    }
+
     @Override
     public void stopped() {
         try {
             timerLock.lock();
             try {
-                if (timer != null) {
-                    timer.cancel();
+                if (scheduler != null) {
+                    scheduler.shutdownNow();
                 }
+                releaseLeases();
             } finally {
                 timerLock.unlock();
             }
+            stopResourceWatcher();
         } catch (Throwable t) {
             Exceptions.handle(LOG, t);
         }
     }
 
+    /*
+     * Stops watching and polling resources
+     */
+    private synchronized void stopResourceWatcher() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+            watchedDirectories.clear();
+        }
+        if (reloadTimer != null) {
+            reloadTimer.cancel();
+            reloadTimer = null;
+            polledFiles.clear();
+        }
+    }
+
+    /*
+     * Releases all leases held by this node, so that another node can take over without waiting for them to expire
+     */
+    private void releaseLeases() {
+        LockProvider provider = lockProvider;
+        if (provider == null) {
+            return;
+        }
+        for (TimerInfo info : timers) {
+            Lease lease = info.getLease();
+            if (lease != null) {
+                try {
+                    provider.release(lease);
+                    info.leaseReleased();
+                } catch (Throwable e) {
+                    Exceptions.handle(LOG, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the lease held for the task executed by the current thread.
+     * <p>
+     * The fencing token of the lease (see {@link Lease#getFencingToken()}) can be passed to storage systems, which
+     * can then reject writes of a node which lost its lease in the meantime.
+     *
+     * @return the lease of the currently executed task, if it is marked with {@link OncePerCluster} and a lock
+     * provider is configured. An empty optional otherwise or if the lease could not be renewed while the task was
+     * running (in which case another node might execute the task by now).
+     */
+    public static Optional<Lease> getCurrentLease() {
+        TimerInfo info = currentTimer.get();
+        if (info == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(info.getLease());
+    }
+
     @Override
     public void awaitTermination() {
         // Not necessary
@@ -249,6 +657,10 @@ public class TimerService implements Lifecycle {
      * <p>
      * This is used to reload files like properties in development environments. In production systems, no
      * reloading will be performed.
+     * <p>
+     * Changes are detected using a <tt>WatchService</tt> on the directory of the file. If the file system doesn't
+     * support this, or if the file is part of a JAR (in which case the JAR file is checked), the file is polled
+     * once per second.
      *
      * @param url      the file to watch
      * @param callback the callback to invoke once the file has changed
@@ -256,12 +668,18 @@ public class TimerService implements Lifecycle {
     public void addWatchedResource(@Nonnull URL url, @Nonnull Runnable callback) {
         try {
             WatchedResource res = new WatchedResource();
-            File file = new File(url.toURI());
+            res.inJar = "jar".equals(url.getProtocol());
+            File file = res.inJar ? getJarFile(url) : new File(url.toURI());
             res.file = file;
             res.callback = callback;
             res.lastModified = file.lastModified();
             loadedFiles.add(res);
-        } catch (IllegalArgumentException e) {
+            synchronized (this) {
+                if (watchService != null || reloadTimer != null) {
+                    watch(res);
+                }
+            }
+        } catch (MalformedURLException | IllegalArgumentException e) {
             Exceptions.handle()
                     .withSystemErrorMessage("Cannot monitor URL '%s' for changes: %s (%s)", url)
                     .to(LOG)
@@ -274,6 +692,15 @@ public class TimerService implements Lifecycle {
         }
     }
 
+    /*
+     * Determines the JAR file containing the given resource (jar:file:/path/to/file.jar!/resource)
+     */
+    private File getJarFile(URL url) throws MalformedURLException, URISyntaxException {
+        String path = url.getPath();
+        int separator = path.indexOf("!/");
+        return new File(new URL(separator >= 0 ? path.substring(0, separator) : path).toURI());
+    }
+
     @Override
     public String getName() {
         return "timer (System Timer Services)";
@@ -283,53 +710,167 @@ public class TimerService implements Lifecycle {
      * Executes all one minute timers (implementing <tt>EveryTenSeconds</tt>) now (out of schedule).
      */
     public void runTenSecondTimers() {
-        for (final TimedTask task : everyTenSeconds.getParts()) {
-            executeTask(task);
-        }
-        lastTenSecondsExecution = System.currentTimeMillis();
+        runTimers(EveryTenSeconds.class);
     }
 
     /**
      * Executes all one minute timers (implementing <tt>EveryMinute</tt>) now (out of schedule).
      */
     public void runOneMinuteTimers() {
-        for (final TimedTask task : everyMinute.getParts()) {
-            executeTask(task);
+        runTimers(EveryMinute.class);
+    }
+
+    /*
+     * Executes all timers of the given type now (out of schedule). Just like a scheduled execution, this is skipped
+     * for timers which are still running and for timers whose lease is held by another node.
+     */
+    private void runTimers(Class<? extends TimedTask> type) {
+        long now = System.currentTimeMillis();
+        for (TimerInfo info : timers) {
+            if (info.getType() == type) {
+                executeTask(info, now);
+            }
         }
-        lastOneMinuteExecution = System.currentTimeMillis();
     }
 
-    private void executeTask(final TimedTask task) {
-        Async.executor(TIMER).start(() -> {
+    /*
+     * Executes the task of the given timer unless its previous execution is still pending and records its lateness
+     * compared to the given planned start
+     */
+    private void executeTask(TimerInfo info, long plannedStart) {
+        if (!info.tryStart()) {
+            LOG.FINE("Skipping timer %s as its previous execution is still running", info.getName());
+            return;
+        }
+        Async.executor(TIMER).start(() -> runTimer(info, plannedStart)).dropOnOverload(() -> {
+            info.completed(-1);
+            LOG.INFO("Dropping timer %s due to system overload!", info.getName());
+        }).execute();
+    }
+
+    /*
+     * Runs the task of the given timer unless it runs once per cluster and another node holds its lease
+     */
+    private void runTimer(TimerInfo info, long plannedStart) {
+        long duration = -1;
+        try {
+            if (!acquireLease(info)) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            info.executed(now, now - plannedStart);
+            currentTimer.set(info);
+            ScheduledFuture<?> renewal = scheduleLeaseRenewal(info);
             try {
-                task.runTimer();
+                info.getTask().runTimer();
             } catch (Throwable t) {
                 Exceptions.handle(LOG, t);
+            } finally {
+                if (renewal != null) {
+                    renewal.cancel(false);
+                }
+                currentTimer.remove();
+                duration = System.currentTimeMillis() - now;
             }
-        }).dropOnOverload(() ->
-                        LOG.INFO("Dropping timer tasks due to system overload!")
-        ).execute();
+        } finally {
+            info.completed(duration);
+        }
+    }
 
+    /*
+     * Acquires the lease for the given timer (or extends it, if this node already holds it), if it runs once per
+     * cluster. Returns false if the task must not be executed by this node.
+     */
+    private boolean acquireLease(TimerInfo info) {
+        LockProvider provider = lockProvider;
+        if (!info.isOncePerCluster() || provider == null) {
+            return true;
+        }
+        try {
+            Lease lease = provider.tryAcquire(info.getLockName(), owner, leaseDuration);
+            info.leaseAcquired(lease);
+            if (lease == null) {
+                LOG.FINE("Skipping timer %s as another node holds its lease", info.getName());
+                return false;
+            }
+            return true;
+        } catch (Throwable e) {
+            info.leaseAcquired(null);
+            Exceptions.handle()
+                      .to(LOG)
+                      .error(e)
+                      .withSystemErrorMessage("Cannot acquire the lease for timer %s: %s (%s)", info.getName())
+                      .handle();
+            return false;
+        }
+    }
+
+    /*
+     * Periodically renews the lease of the given timer while its task is running, so that tasks which run longer
+     * than timer.cluster.lease keep their lease. Returns null if the timer holds no lease.
+     */
+    @Nullable
+    private ScheduledFuture<?> scheduleLeaseRenewal(TimerInfo info) {
+        Lease lease = info.getLease();
+        ScheduledExecutorService currentScheduler = scheduler;
+        if (lease == null || currentScheduler == null) {
+            return null;
+        }
+        long interval = Math.max(1, leaseDuration.toMillis() / 3);
+        try {
+            return currentScheduler.scheduleAtFixedRate(() -> renewLease(info, lease.getFencingToken()),
+                                                        interval,
+                                                        interval,
+                                                        TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The scheduler was shut down
+            Exceptions.ignore(e);
+            return null;
+        }
+    }
+
+    /*
+     * Renews the lease of the given timer. If the lease was granted with another fencing token, it expired in the
+     * meantime and another node might have executed the task. Therefore the lease is considered lost and dropped.
+     */
+    private void renewLease(TimerInfo info, long fencingToken) {
+        LockProvider provider = lockProvider;
+        if (provider == null || info.getLease() == null) {
+            return;
+        }
+        try {
+            Lease renewed = provider.tryAcquire(info.getLockName(), owner, leaseDuration);
+            if (renewed != null && renewed.getFencingToken() == fencingToken) {
+                info.leaseAcquired(renewed);
+                return;
+            }
+            info.leaseReleased();
+            if (renewed != null) {
+                provider.release(renewed);
+            }
+            LOG.WARN("The timer %s lost its lease while running. Another node might execute it concurrently!",
+                     info.getName());
+        } catch (Throwable e) {
+            Exceptions.handle()
+                      .to(LOG)
+                      .error(e)
+                      .withSystemErrorMessage("Cannot renew the lease for timer %s: %s (%s)", info.getName())
+                      .handle();
+        }
     }
 
     /**
      * Executes all ten minutes timers (implementing <tt>EveryTenMinutes</tt>) now (out of schedule).
      */
     public void runTenMinuteTimers() {
-        for (final TimedTask task : everyTenMinutes.getParts()) {
-            executeTask(task);
-        }
-        lastTenMinutesExecution = System.currentTimeMillis();
+        runTimers(EveryTenMinutes.class);
     }
 
     /**
      * Executes all one hour timers (implementing <tt>EveryHour</tt>) now (out of schedule).
      */
     public void runOneHourTimers() {
-        for (final TimedTask task : everyHour.getParts()) {
-            executeTask(task);
-        }
-        lastHourExecution = System.currentTimeMillis();
+        runTimers(EveryHour.class);
     }
 
     /**
@@ -339,16 +880,17 @@ public class TimerService implements Lifecycle {
      *                      hour of day to execute this task, or if it should be executed in any case (<tt>true</tt>).
      */
     public void runEveryDayTimers(boolean outOfSchedule) {
-        for (final EveryDay task : everyDay.getParts()) {
-            if (!Sirius.getConfig().hasPath("timer.daily." + task.getConfigKeyName())) {
-                LOG.WARN("Skipping daily timer %s as config key '%s' is missing!",
-                        task.getClass().getName(),
-                        "timer.daily." + task.getConfigKeyName());
-            } else {
-                if (outOfSchedule || Sirius.getConfig()
-                        .getInt("timer.daily." + task.getConfigKeyName()) == LocalTime.now()
-                        .getHour()) {
-                    executeTask(task);
+        if (outOfSchedule) {
+            runTimers(EveryDay.class);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int currentHour = LocalTime.now().getHour();
+        for (TimerInfo info : timers) {
+            if (info.getType() == EveryDay.class) {
+                String configKey = "timer.daily." + ((EveryDay) info.getTask()).getConfigKeyName();
+                if (Sirius.getConfig().getInt(configKey) == currentHour) {
+                    executeTask(info, now);
                 }
             }
         }
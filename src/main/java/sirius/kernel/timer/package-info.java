@@ -11,7 +11,8 @@
  * <p>
  * Provides a {@link sirius.kernel.timer.TimerService} which executes all parts in the
  * {@link sirius.kernel.di.GlobalContext}, registered for one of the timer interfaces (<tt>EveryMinute</tt>,
- * <tt>EveryTenMinutes</tt>, <tt>EveryHour</tt>, <tt>EveryDay</tt>) in their appropriate interval.
+ * <tt>EveryTenMinutes</tt>, <tt>EveryHour</tt>, <tt>EveryDay</tt>) in their appropriate interval. Tasks which need
+ * another interval or a cron-like schedule implement {@link sirius.kernel.timer.ScheduledTask}.
  * <p>
  * As this framework is based on the dependency injection framework, the classes only need to implement the
  * respective interface and a {@link sirius.kernel.di.std.Register} annotation to be executed. The
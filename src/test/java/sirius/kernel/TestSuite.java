@@ -15,7 +15,7 @@ import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
 
 @RunWith(WildcardPatternSuite.class)
-@SuiteClasses({"**/*Test.class", "**/*Spec.class"})
+@SuiteClasses({"**/*Test.class", "**/*Spec.class", "!**/generated/*"})
 public class TestSuite {
 
     @BeforeClass
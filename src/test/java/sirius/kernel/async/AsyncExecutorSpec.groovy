@@ -0,0 +1,208 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async
+
+import sirius.kernel.BaseSpecification
+
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class AsyncExecutorSpec extends BaseSpecification {
+
+    def "a forkjoin executor forks the CallContext and drops tasks beyond poolSize plus queueLength"() {
+        given:
+        def flow = CallContext.getCurrent().getMDCValue(CallContext.MDC_FLOW).asString()
+        def release = new CountDownLatch(1)
+        def seenFlow = null
+        def seenThread = null
+        def drops = new AtomicInteger()
+        when:
+        def running = Async.executor("test-forkjoin").fork({
+            seenFlow = CallContext.getCurrent().getMDCValue(CallContext.MDC_FLOW).asString()
+            seenThread = Thread.currentThread().getName()
+            release.await()
+        } as Runnable).execute()
+        def queued = Async.executor("test-forkjoin").fork({} as Runnable).dropOnOverload({
+            drops.incrementAndGet()
+        } as Runnable).execute()
+        Async.executor("test-forkjoin").fork({} as Runnable).dropOnOverload({
+            drops.incrementAndGet()
+        } as Runnable).execute()
+        release.countDown()
+        running.await(Duration.ofSeconds(5))
+        queued.await(Duration.ofSeconds(5))
+        def executor = Async.getExecutors().find { it.getCategory() == "test-forkjoin" }
+        then:
+        executor.getMode() == AsyncExecutor.Mode.FORKJOIN
+        seenFlow == flow
+        seenThread.startsWith("test-forkjoin-")
+        queued.isSuccessful()
+        drops.get() == 1
+        executor.getDropped() == 1
+        executor.getExecuted() == 3
+    }
+
+    def "a virtual executor runs tasks or falls back to a fixed pool"() {
+        given:
+        def seenThread = null
+        when:
+        Async.executor("test-virtual").fork({
+            seenThread = Thread.currentThread().getName()
+        } as Runnable).execute().await(Duration.ofSeconds(5))
+        def executor = Async.getExecutors().find { it.getCategory() == "test-virtual" }
+        and: "the promise is completed before the executor marks the task as finished"
+        def deadline = System.currentTimeMillis() + 5000
+        while (executor.getCompletedTaskCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        then:
+        executor.getMode() in [AsyncExecutor.Mode.VIRTUAL, AsyncExecutor.Mode.FIXED]
+        seenThread.startsWith("test-virtual-")
+        executor.getExecuted() == 1
+        executor.getActiveCount() == 0
+    }
+
+    def "the pool size of a fixed executor can be changed along with its capacity"() {
+        given:
+        def exec = new AsyncExecutor("test-resize", AsyncExecutor.Mode.FIXED, 1, 1)
+        def release = new CountDownLatch(1)
+        def started = new CountDownLatch(2)
+        when:
+        exec.setCorePoolSize(2)
+        3.times {
+            exec.execute({
+                started.countDown()
+                release.await()
+            } as Runnable)
+        }
+        started.await()
+        then:
+        exec.getCorePoolSize() == 2
+        exec.getMaximumPoolSize() == 2
+        exec.getLimit() == 3
+        exec.getQueue().size() == 1
+        exec.getBlocked() == 0
+        when:
+        release.countDown()
+        exec.shutdown()
+        exec.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)
+        then:
+        exec.getCompletedTaskCount() == 3
+    }
+
+    def "unknown modes fall back to fixed"() {
+        expect:
+        AsyncExecutor.parseMode("test", "ForkJoin") == AsyncExecutor.Mode.FORKJOIN
+        AsyncExecutor.parseMode("test", "") == AsyncExecutor.Mode.FIXED
+        AsyncExecutor.parseMode("test", "unknown") == AsyncExecutor.Mode.FIXED
+    }
+
+    def "an adaptive limit backs off multiplicatively and grows additively"() {
+        given:
+        def limit = new AdaptiveLimit(2, 20, 2)
+        when:
+        limit.adjust(10, 20)
+        limit.adjust(10, 20)
+        then:
+        limit.getLimit() == 20
+        when:
+        limit.adjust(50, 20)
+        limit.adjust(50, 20)
+        then:
+        limit.getLimit() == 16
+        when:
+        limit.adjust(10, 16)
+        limit.adjust(10, 2)
+        then:
+        limit.getLimit() == 17
+        when:
+        12.times { limit.adjust(1000, 17) }
+        then:
+        limit.getLimit() == 2
+    }
+
+    def "tasks beyond the adaptive limit are rejected and run by the caller"() {
+        given:
+        def exec = new AsyncExecutor("test-adaptive", AsyncExecutor.Mode.FIXED, 2, 2)
+        exec.enableAdaptiveLimit(1, 2)
+        def release = new CountDownLatch(1)
+        def caller = null
+        when:
+        exec.adaptiveLimit.adjust(10, 0)
+        5.times { exec.adaptiveLimit.adjust(1000, 4) }
+        exec.execute({ release.await() } as Runnable)
+        exec.execute({ caller = Thread.currentThread() } as Runnable)
+        then:
+        exec.getLimit() == 1
+        caller == Thread.currentThread()
+        exec.getRejected(AsyncExecutor.RejectionReason.LIMIT) == 1
+        exec.getBlocked() == 1
+        exec.toString().contains("Limit: 1 (1..4)")
+        cleanup:
+        release.countDown()
+        exec.shutdown()
+    }
+
+    def "waiting tasks are started by priority and dropped once their deadline passed"() {
+        given:
+        def release = new CountDownLatch(1)
+        def order = Collections.synchronizedList([])
+        def drops = new AtomicInteger()
+        when:
+        def blocker = Async.executor("test-priority").fork({ release.await() } as Runnable).execute()
+        def low = Async.executor("test-priority").fork({ order << "low" } as Runnable).withPriority(-1).execute()
+        def normal = Async.executor("test-priority").fork({ order << "normal" } as Runnable).execute()
+        def high = Async.executor("test-priority").fork({ order << "high" } as Runnable).withPriority(10).execute()
+        def expiring = Async.executor("test-priority")
+                            .fork({ order << "expired" } as Runnable)
+                            .withPriority(20)
+                            .withDeadline(Instant.now().plusMillis(50))
+                            .dropOnOverload({ drops.incrementAndGet() } as Runnable)
+                            .execute()
+        Thread.sleep(100)
+        release.countDown()
+        [blocker, low, normal, high, expiring].each { it.await(Duration.ofSeconds(5)) }
+        then:
+        order == ["high", "normal", "low"]
+        expiring.getFailure() instanceof DeadlineExceededException
+        drops.get() == 1
+        when:
+        def expired = Async.executor("test-priority")
+                           .fork({ order << "expired" } as Runnable)
+                           .withDeadline(Instant.now().minusSeconds(1))
+                           .execute()
+        then:
+        expired.getFailure() instanceof DeadlineExceededException
+        order == ["high", "normal", "low"]
+        Async.getExecutors().find { it.getCategory() == "test-priority" }.
+                getRejected(AsyncExecutor.RejectionReason.DEADLINE) == 2
+    }
+
+    def "wait and run times of tasks are recorded separately"() {
+        when:
+        def first = Async.executor("test-latency").fork({ Thread.sleep(50) } as Runnable).execute()
+        def second = Async.executor("test-latency").fork({} as Runnable).execute()
+        first.await(Duration.ofSeconds(5))
+        second.await(Duration.ofSeconds(5))
+        def executor = Async.getExecutors().find { it.getCategory() == "test-latency" }
+        // The promise is completed by the task itself, therefore its run time might not be recorded yet
+        for (int i = 0; i < 100 && executor.getRunTimes().getCount() < 2; i++) {
+            Thread.sleep(10)
+        }
+        then:
+        executor.getWaitTimes().getCount() == 2
+        executor.getWaitTimes().getMax() >= 40_000
+        executor.getRunTimes().getCount() == 2
+        executor.getRunTimes().getPercentile(50) < 40_000
+        executor.getRunTimes().getMax() >= 40_000
+        executor.getBusyTime() >= 40_000_000
+    }
+}
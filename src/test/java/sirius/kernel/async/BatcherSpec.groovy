@@ -0,0 +1,105 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async
+
+import sirius.kernel.BaseSpecification
+import sirius.kernel.commons.Callback
+import sirius.kernel.health.HandledException
+
+import java.time.Duration
+import java.util.function.Consumer
+
+class BatcherSpec extends BaseSpecification {
+
+    def "items are processed in batches once the batch is full or flushed"() {
+        given:
+        def batches = Collections.synchronizedList([])
+        def batcher = Async.batcher("batcher-test", 10, Duration.ofMinutes(1), { items ->
+            batches << new ArrayList(items)
+        } as Consumer)
+        when:
+        def futures = (1..25).collect { batcher.add(it) }
+        futures.take(20).each { it.await(Duration.ofSeconds(5)) }
+        then:
+        batches.size() == 2
+        batches.flatten().sort() == (1..20).toList()
+        batcher.getPendingItems() == 5
+        !futures.last().isCompleted()
+        when:
+        batcher.flush()
+        futures.each { it.await(Duration.ofSeconds(5)) }
+        then:
+        futures.every { it.isSuccessful() }
+        batches.size() == 3
+        batches[2] == (21..25).toList()
+    }
+
+    def "a batch is processed once its first item waited for the max delay"() {
+        given:
+        def batches = Collections.synchronizedList([])
+        def batcher = Async.batcher("batcher-test", 100, Duration.ofMillis(20), { items ->
+            batches << new ArrayList(items)
+        } as Consumer)
+        when:
+        def futures = (1..3).collect { batcher.add(it) }
+        futures.each { it.await(Duration.ofSeconds(5)) }
+        then:
+        futures.every { it.isSuccessful() }
+        batches == [[1, 2, 3]]
+    }
+
+    def "the delayed flush of a batch is cancelled once the batch is full"() {
+        given:
+        def batcher = Async.batcher("batcher-test", 2, Duration.ofMinutes(1), { items -> } as Consumer)
+        when:
+        def first = batcher.add("a")
+        def delayedFlush = batcher.scheduledFlush
+        def second = batcher.add("b")
+        second.await(Duration.ofSeconds(5))
+        then:
+        delayedFlush.isCancelled()
+        batcher.scheduledFlush == null
+        first.isSuccessful()
+    }
+
+    def "pending items are processed when the system shuts down"() {
+        given:
+        def batches = Collections.synchronizedList([])
+        def batcher = Async.batcher("batcher-test", 100, Duration.ofMinutes(1), { items ->
+            batches << new ArrayList(items)
+        } as Consumer)
+        def lifecycle = new Batcher.BatcherLifecycle()
+        when:
+        def futures = (1..3).collect { batcher.add(it) }
+        lifecycle.stopped()
+        futures.each { it.await(Duration.ofSeconds(5)) }
+        then:
+        futures.every { it.isSuccessful() }
+        batches == [[1, 2, 3]]
+        Batcher.timer == null
+        cleanup:
+        lifecycle.started()
+    }
+
+    def "all items of a failed batch fail"() {
+        given:
+        def batcher = Async.batcher("batcher-test", 2, Duration.ofMinutes(1), { items ->
+            throw new IllegalStateException("failed")
+        } as Consumer)
+        when:
+        def futures = [batcher.add("a"), batcher.add("b")]
+        futures.each {
+            it.onFailure({ e -> } as Callback)
+            it.await(Duration.ofSeconds(5))
+        }
+        then:
+        futures.every { it.getFailure() instanceof HandledException }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of creating, forking and detaching a {@link CallContext}, as done for each executed task.
+ * <p>
+ * This is not part of the test suite. Run it via {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallContextBenchmark {
+
+    /*
+     * The context being forked, which carries a task context and a system string like a typical caller
+     */
+    private CallContext parent;
+
+    @Setup
+    public void setup() {
+        parent = CallContext.initialize();
+        TaskContext.get().setSystem("BENCHMARK").setSubSystem("parent").setJob("1");
+        CallContext.detach();
+    }
+
+    @Benchmark
+    public void initializeAndDetach(Blackhole blackhole) {
+        blackhole.consume(CallContext.initialize());
+        CallContext.detach();
+    }
+
+    @Benchmark
+    public void forkAndDetach(Blackhole blackhole) {
+        parent.forkAndInstall();
+        blackhole.consume(CallContext.getCurrent());
+        CallContext.detach();
+    }
+
+    @Benchmark
+    public void forkAsTaskAndDetach(Blackhole blackhole) {
+        parent.forkAndInstall();
+        TaskContext.get().setSystem("BENCHMARK").setSubSystem("child").setJob("2");
+        blackhole.consume(CallContext.getCurrent().getMDCValue(TaskContext.MDC_SYSTEM));
+        CallContext.detach();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(CallContextBenchmark.class.getSimpleName()).build()).run();
+    }
+}
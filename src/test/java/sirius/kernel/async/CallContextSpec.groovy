@@ -0,0 +1,66 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async
+
+import sirius.kernel.BaseSpecification
+import sirius.kernel.commons.Tuple
+
+class CallContextSpec extends BaseSpecification {
+
+    def "the mdc keeps the order of insertion while values are replaced and removed"() {
+        given:
+        def ctx = CallContext.initialize()
+        when:
+        ctx.addToMDC("a", "1")
+        ctx.addToMDC("b", "2")
+        ctx.addToMDC("a", "3")
+        ctx.addToMDC("c", null)
+        ctx.removeFromMDC("b")
+        (1..100).each { ctx.addToMDC("d", String.valueOf(it)) }
+        then:
+        ctx.getMDC().findAll { it.first != CallContext.MDC_FLOW } == [Tuple.create("a", "3"),
+                                                                      Tuple.create("c", ""),
+                                                                      Tuple.create("d", "100")]
+        ctx.getMDCValue("b").isNull()
+    }
+
+    def "a forked context shares sub contexts until either context installs a new one"() {
+        given:
+        def parent = CallContext.initialize()
+        def task = parent.get(TaskContext.class)
+        task.setSystem("PARENT")
+        when:
+        parent.forkAndInstall()
+        def child = CallContext.getCurrent()
+        child.set(ArrayList.class, ["child"])
+        parent.set(HashMap.class, [parent: 42])
+        then:
+        child != parent
+        child.get(TaskContext.class).is(task)
+        child.getMDCValue(CallContext.MDC_FLOW).asString() == parent.getMDCValue(CallContext.MDC_FLOW).asString()
+        child.getMDCValue(CallContext.MDC_PARENT).asString() == task.getSystemString()
+        child.getMDCValue(TaskContext.MDC_SYSTEM).isNull()
+        child.get(HashMap.class).isEmpty()
+        parent.get(ArrayList.class).isEmpty()
+        CallContext.getContext(Thread.currentThread().getId()).get().is(child)
+    }
+
+    def "detaching a context untracks it even if tracking was disabled after it had been tracked"() {
+        given:
+        def ctx = CallContext.initialize()
+        def threadId = Thread.currentThread().getId()
+        when:
+        CallContext.trackThreads = false
+        CallContext.detach()
+        then:
+        !CallContext.getContext(threadId).isPresent()
+        cleanup:
+        CallContext.trackThreads = null
+    }
+}
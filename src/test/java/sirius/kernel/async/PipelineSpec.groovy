@@ -0,0 +1,160 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async
+
+import sirius.kernel.BaseSpecification
+import sirius.kernel.commons.Callback
+
+import java.time.Duration
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+import java.util.function.Function
+
+class PipelineSpec extends BaseSpecification {
+
+    def "ordered stages keep the order of the source while limiting the items in flight"() {
+        given:
+        def pulled = new AtomicInteger()
+        def consumed = new AtomicInteger()
+        def maxInFlight = new AtomicInteger()
+        def source = new Iterator<Integer>() {
+            int next = 0
+
+            boolean hasNext() {
+                return next < 200
+            }
+
+            Integer next() {
+                pulled.incrementAndGet()
+                return next++
+            }
+
+            void remove() {
+            }
+        }
+        def results = []
+        when:
+        def count = Pipeline.from(source)
+                            .withBufferSize(2)
+                            .map("pipeline-test", 4, { value ->
+            Thread.sleep(value % 3)
+            value * 2
+        } as Function)
+                            .mapUnordered("pipeline-test", 4, { value -> value + 1 } as Function)
+                            .map("pipeline-test", 2, { value -> value } as Function)
+                            .forEach("pipeline-test", { value ->
+            maxInFlight.accumulateAndGet(pulled.get() - consumed.incrementAndGet(),
+                                         { a, b -> Math.max(a, b) } as java.util.function.IntBinaryOperator)
+            results << value
+        } as Consumer)
+                            .awaitOrFail(Duration.ofSeconds(30))
+        then:
+        count == 200
+        results.sort(false) == (0..199).collect { it * 2 + 1 }
+        // Each stage holds at most parallelism + bufferSize items: (4 + 2) + (4 + 2) + (2 + 2) + (1 + 2)
+        maxInFlight.get() <= 19
+    }
+
+    def "an ordered pipeline emits the items in the order of the source"() {
+        given:
+        def results = []
+        when:
+        Pipeline.from(0..99)
+                .map("pipeline-test", 8, { value ->
+            Thread.sleep(100 - value as long)
+            value
+        } as Function)
+                .forEach("pipeline-test", { value -> results << value } as Consumer)
+                .awaitOrFail(Duration.ofSeconds(30))
+        then:
+        results == (0..99).toList()
+    }
+
+    def "a failing or cancelled pipeline stops reading from its source"() {
+        given:
+        def pulled = new AtomicInteger()
+        def source = (0..9999).collect { it }.iterator()
+        def counting = [hasNext: { source.hasNext() }, next: { pulled.incrementAndGet(); source.next() }] as Iterator
+        when:
+        def failed = Pipeline.from(counting)
+                             .withBufferSize(1)
+                             .map("pipeline-test", 2, { value ->
+            if (value == 10) {
+                throw new IllegalStateException("failed")
+            }
+            value
+        } as Function)
+                             .forEach("pipeline-test", { value -> } as Consumer)
+        failed.onFailure({ e -> } as Callback)
+        failed.await(Duration.ofSeconds(10))
+        then:
+        failed.getFailure() instanceof IllegalStateException
+        pulled.get() < 100
+        when:
+        def pipeline = Pipeline.from(0..9999).map("pipeline-test", 1, { value ->
+            Thread.sleep(1)
+            value
+        } as Function)
+        def cancelled = pipeline.forEach("pipeline-test", { value -> } as Consumer)
+        cancelled.onFailure({ e -> } as Callback)
+        pipeline.cancel()
+        cancelled.await(Duration.ofSeconds(10))
+        then:
+        cancelled.getFailure() instanceof CancellationException
+        !pipeline.isActive()
+    }
+
+    def "a blocking source doesn't block the stages"() {
+        given:
+        def consumed = new CountDownLatch(5)
+        def unblock = new CountDownLatch(1)
+        def source = (0..9).collect { it }.iterator()
+        def blocking = [hasNext: { source.hasNext() }, next: {
+            def value = source.next()
+            if (value == 5) {
+                unblock.await()
+            }
+            value
+        }] as Iterator
+        when:
+        def promise = Async.defaultExecutor().fork({
+            Pipeline.from(blocking)
+                    .map("pipeline-test", 2, { value -> value } as Function)
+                    .forEach("pipeline-test", { value -> consumed.countDown() } as Consumer)
+                    .await(Duration.ofSeconds(10))
+        } as Runnable).execute()
+        def consumedWhileBlocked = consumed.await(5, TimeUnit.SECONDS)
+        unblock.countDown()
+        promise.await(Duration.ofSeconds(10))
+        then:
+        consumedWhileBlocked
+        promise.isSuccessful()
+    }
+
+    def "items rejected by an overloaded executor are retried without growing the stack"() {
+        given:
+        def depths = Collections.synchronizedList([])
+        when:
+        def count = Pipeline.from(0..199)
+                            .map("pipeline-overload", 8, { value ->
+            depths << Thread.currentThread().getStackTrace().length
+            value
+        } as Function)
+                            .forEach("pipeline-overload", { value -> } as Consumer)
+                            .awaitOrFail(Duration.ofSeconds(30))
+        then:
+        count == 200
+        depths.max() - depths.min() < 100
+        Async.getExecutors().find { it.getCategory() == "pipeline-overload" }.getDropped() > 0
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the completion and fan-out throughput of {@link Promise} with <tt>CompletableFuture</tt>.
+ * <p>
+ * This is not part of the test suite. Run it via {@link #main(String[])} from the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromiseBenchmark {
+
+    /*
+     * Number of handlers registered by the fan-out benchmarks
+     */
+    private static final int FAN_OUT = 16;
+
+    @Benchmark
+    public void promiseCompletion(Blackhole blackhole) {
+        Promise<String> promise = new Promise<>();
+        promise.onSuccess(blackhole::consume);
+        promise.success("value");
+    }
+
+    @Benchmark
+    public void completableFutureCompletion(Blackhole blackhole) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.thenAccept(blackhole::consume);
+        future.complete("value");
+    }
+
+    @Benchmark
+    public void promiseFanOut(Blackhole blackhole) {
+        Promise<String> promise = new Promise<>();
+        for (int i = 0; i < FAN_OUT; i++) {
+            promise.onSuccess(blackhole::consume);
+        }
+        promise.success("value");
+    }
+
+    @Benchmark
+    public void completableFutureFanOut(Blackhole blackhole) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        for (int i = 0; i < FAN_OUT; i++) {
+            future.thenAccept(blackhole::consume);
+        }
+        future.complete("value");
+    }
+
+    @Benchmark
+    public void promiseMapChain(Blackhole blackhole) {
+        Promise<String> promise = new Promise<>();
+        promise.map(String::length).map(length -> length * 2).onSuccess(blackhole::consume);
+        promise.success("value");
+    }
+
+    @Benchmark
+    public void completableFutureMapChain(Blackhole blackhole) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.thenApply(String::length).thenApply(length -> length * 2).thenAccept(blackhole::consume);
+        future.complete("value");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(PromiseBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async
+
+import sirius.kernel.BaseSpecification
+import sirius.kernel.commons.Callback
+import sirius.kernel.health.HandledException
+
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Function
+
+class PromiseSpec extends BaseSpecification {
+
+    def "handlers registered concurrently with the completion are notified exactly once"() {
+        given:
+        def pool = Executors.newFixedThreadPool(8)
+        def rounds = 200
+        def handlersPerRound = 48
+        def notifications = new AtomicInteger()
+        when:
+        rounds.times {
+            def promise = new Promise<String>()
+            def start = new CountDownLatch(1)
+            def registrations = (1..4).collect {
+                pool.submit({
+                    start.await()
+                    handlersPerRound.intdiv(4).times {
+                        promise.onSuccess({ value -> notifications.incrementAndGet() } as Callback)
+                    }
+                } as Callable)
+            }
+            def completions = (1..2).collect { index ->
+                pool.submit({
+                    start.await()
+                    promise.success("value-" + index)
+                } as Callable)
+            }
+            start.countDown()
+            (registrations + completions).each { it.get(5, TimeUnit.SECONDS) }
+        }
+        then:
+        notifications.get() == rounds * handlersPerRound
+        cleanup:
+        pool.shutdown()
+    }
+
+    def "a promise is completed only once and notifies handlers in order of registration"() {
+        given:
+        def promise = new Promise<String>()
+        def order = []
+        promise.onSuccess({ value -> order << 1 } as Callback)
+        promise.onSuccess({ value -> order << 2 } as Callback)
+        when:
+        promise.success("first")
+        promise.success("second")
+        promise.onSuccess({ value -> order << 3 } as Callback)
+        then:
+        promise.get() == "first"
+        promise.isSuccessful()
+        !promise.isFailed()
+        order == [1, 2, 3]
+        when:
+        def failed = new Promise<String>()
+        failed.onFailure({ e -> order << e.getMessage() } as Callback)
+        failed.fail(new IllegalStateException("failed"))
+        failed.success("late")
+        then:
+        failed.isFailed()
+        !failed.isSuccessful()
+        failed.get() == null
+        order == [1, 2, 3, "failed"]
+    }
+
+    def "await blocks until the promise is completed or the timeout expires"() {
+        given:
+        def promise = new Promise<String>()
+        when:
+        def timedOut = promise.await(Duration.ofMillis(50))
+        Thread.start {
+            Thread.sleep(50)
+            promise.success("value")
+        }
+        def completed = promise.await(Duration.ofSeconds(5))
+        then:
+        !timedOut.isPresent()
+        completed.get() == "value"
+        promise.awaitOrFail(Duration.ofMillis(1)) == "value"
+        when:
+        new Promise<String>().awaitOrFail(Duration.ofMillis(10))
+        then:
+        thrown(HandledException)
+        when:
+        def failed = new Promise<String>()
+        failed.onFailure({ e -> } as Callback)
+        failed.fail(new IllegalStateException("failed"))
+        failed.awaitOrFail(Duration.ofSeconds(1))
+        then:
+        def e = thrown(HandledException)
+        e.getCause() instanceof IllegalStateException
+    }
+
+    def "promises and CompletableFutures can be converted into each other"() {
+        given:
+        def future = new CompletableFuture<String>()
+        def promise = Promise.from(future)
+        def mapped = promise.map({ value -> value.length() } as java.util.function.Function).toCompletableFuture()
+        when:
+        future.complete("value")
+        then:
+        promise.get() == "value"
+        mapped.get() == 5
+        when:
+        def failingFuture = new CompletableFuture<String>()
+        def failingPromise = Promise.from(failingFuture.thenApply({ value -> value } as java.util.function.Function))
+        failingPromise.onFailure({ e -> } as Callback)
+        failingFuture.completeExceptionally(new IllegalStateException("failed"))
+        then:
+        failingPromise.getFailure() instanceof IllegalStateException
+        failingPromise.toCompletableFuture().isCompletedExceptionally()
+    }
+
+    def "continuations run on the given executor within a fork of the registering CallContext"() {
+        given:
+        def promise = new Promise<String>()
+        def flow = CallContext.getCurrent().getMDCValue(CallContext.MDC_FLOW).asString()
+        def threadName = null
+        def mapped = promise.mapOn("promise-test", { value ->
+            threadName = Thread.currentThread().getName()
+            CallContext.getCurrent().getMDCValue(CallContext.MDC_FLOW).asString() + "/" + value
+        } as Function)
+        def flatMapped = promise.flatMapOn("promise-test", { value -> Async.success(value.length()) } as Function)
+        when:
+        Thread.start {
+            CallContext.initialize()
+            promise.success("value")
+        }.join()
+        then:
+        mapped.awaitOrFail(Duration.ofSeconds(5)) == flow + "/value"
+        threadName.startsWith("promise-test-")
+        flatMapped.awaitOrFail(Duration.ofSeconds(5)) == 5
+    }
+
+    def "trampolined chains of continuations do not grow the stack"() {
+        given:
+        def root = new Promise<Integer>().trampoline()
+        def promise = root
+        when:
+        50000.times {
+            promise = promise.map({ value -> value + 1 } as Function)
+            promise = promise.flatMap({ value -> Async.success(value + 1) } as Function)
+        }
+        root.success(0)
+        then:
+        promise.get() == 100000
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.async
+
+import sirius.kernel.BaseSpecification
+import sirius.kernel.commons.Callback
+import sirius.kernel.commons.ValueProvider
+import sirius.kernel.health.HandledException
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class TaskGroupSpec extends BaseSpecification {
+
+    def "a task group collects results in order while limiting the parallelism"() {
+        given:
+        def group = TaskGroup.create("task-group-test").withParallelism(2)
+        def running = new AtomicInteger()
+        def maxRunning = new AtomicInteger()
+        when:
+        (1..10).each { i ->
+            group.fork({
+                def current = running.incrementAndGet()
+                maxRunning.accumulateAndGet(current, { a, b -> Math.max(a, b) } as java.util.function.IntBinaryOperator)
+                Thread.sleep(10 - i)
+                running.decrementAndGet()
+                return i * 2
+            } as ValueProvider)
+        }
+        def results = group.await(Duration.ofSeconds(10))
+        then:
+        results == (1..10).collect { it * 2 }
+        maxRunning.get() <= 2
+        when:
+        group.fork({ 1 } as ValueProvider)
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "the first failure cancels the running and waiting tasks of a group"() {
+        given:
+        def group = TaskGroup.create("task-group-test").withParallelism(2)
+        def started = new CountDownLatch(1)
+        def observedCancellation = new CountDownLatch(1)
+        def skipped = new AtomicInteger()
+        when:
+        group.fork({
+            started.countDown()
+            while (TaskContext.get().isActive()) {
+                Thread.sleep(1)
+            }
+            observedCancellation.countDown()
+            return 1
+        } as ValueProvider)
+        group.fork({
+            started.await()
+            throw new IllegalStateException("failed")
+        } as ValueProvider)
+        5.times {
+            group.fork({
+                skipped.incrementAndGet()
+                return 1
+            } as ValueProvider)
+        }
+        group.join().onFailure({ e -> } as Callback)
+        group.await(Duration.ofSeconds(10))
+        then:
+        def e = thrown(HandledException)
+        e.getCause() instanceof IllegalStateException
+        observedCancellation.await(10, java.util.concurrent.TimeUnit.SECONDS)
+        group.isCancelled()
+        skipped.get() == 0
+        TaskContext.get().isActive()
+    }
+
+    def "sequence turns a list of promises into an ordered promise for a list"() {
+        given:
+        def first = new Promise<String>()
+        def second = new Promise<String>()
+        when:
+        def result = Async.sequence([first, second])
+        second.success("b")
+        first.success("a")
+        then:
+        result.get() == ["a", "b"]
+        Async.sequence([]).get() == []
+    }
+
+}
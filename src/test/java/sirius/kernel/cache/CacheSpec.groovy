@@ -0,0 +1,453 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.cache
+
+import com.google.common.cache.CacheBuilder
+import sirius.kernel.BaseSpecification
+import sirius.kernel.async.Async
+import sirius.kernel.commons.Callback
+import sirius.kernel.commons.ValueProvider
+import sirius.kernel.di.Injector
+
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class CacheSpec extends BaseSpecification {
+
+    def "concurrent misses for the same key share a single computation"() {
+        given:
+        def computations = new AtomicInteger()
+        def cache = CacheManager.createCache("coalesce-test", { key ->
+            computations.incrementAndGet()
+            Thread.sleep(200)
+            return key + "-value"
+        } as ValueComputer, null)
+        def start = new CountDownLatch(1)
+        def pool = Executors.newFixedThreadPool(8)
+        when:
+        def futures = (1..8).collect { pool.submit({ start.await(); cache.get("key") } as java.util.concurrent.Callable) }
+        start.countDown()
+        def results = futures.collect { it.get(5, TimeUnit.SECONDS) }
+        pool.shutdown()
+        then:
+        results.every { it == "key-value" }
+        computations.get() == 1
+        cache.getCoalescedLoads() == 7
+    }
+
+    def "a failed computation is not cached"() {
+        given:
+        def attempts = new AtomicInteger()
+        def cache = CacheManager.createCache("failing-test", { key ->
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("first attempt fails")
+            }
+            return "ok"
+        } as ValueComputer, null)
+        when:
+        cache.get("key")
+        then:
+        thrown(Exception)
+        when:
+        def result = cache.get("key")
+        then:
+        result == "ok"
+        attempts.get() == 2
+    }
+
+    def "entries within the refresh-ahead window are served stale and refreshed in the background"() {
+        given:
+        def computations = new AtomicInteger()
+        def cache = CacheManager.createCache("refresh-test", { key ->
+            return computations.incrementAndGet()
+        } as ValueComputer, null)
+        and:
+        cache.get("warmup")
+        cache.timeToLive = 1000
+        cache.refreshAhead = 900
+        when:
+        def first = cache.get("key")
+        Thread.sleep(200)
+        def stale = cache.get("key")
+        def deadline = System.currentTimeMillis() + 2000
+        while (cache.get("key") == stale && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        then:
+        first == 2
+        stale == 2
+        cache.get("key") == 3
+    }
+
+    def "getAll resolves all missing keys with a single call to a BulkValueComputer"() {
+        given:
+        def requested = []
+        def computer = new BulkValueComputer<String, String>() {
+            @Override
+            Map<String, String> computeAll(Collection<String> keys) {
+                requested << new ArrayList<>(keys)
+                return keys.findAll { it != "absent" }.collectEntries { [(it): it.toUpperCase()] }
+            }
+        }
+        def cache = CacheManager.createCache("bulk-test", computer, null)
+        cache.put("b", "cached")
+        when:
+        def result = cache.getAll(["a", "b", "c", "absent"])
+        then:
+        result.keySet() as List == ["a", "b", "c"]
+        result == [a: "A", b: "cached", c: "C"]
+        requested == [["a", "c", "absent"]]
+        cache.getUses() == 4
+        cache.getHitRate() == 25
+        when:
+        cache.putAll([d: "D", e: "E"])
+        then:
+        cache.getAll(["d", "e"]) == [d: "D", e: "E"]
+        requested.size() == 1
+    }
+
+    def "entries evicted from the heap are kept off heap and promoted on access"() {
+        given:
+        def cache = CacheManager.createCache("off-heap-test")
+        cache.get("warmup")
+        cache.data = CacheBuilder.newBuilder().maximumSize(2).removalListener(cache).build()
+        cache.offHeap = cache.createOffHeapStore(4 * 1024 * 1024)
+        when:
+        cache.put("a", "A")
+        cache.put("b", "B")
+        cache.put("c", "C")
+        then:
+        cache.getSize() == 2
+        cache.getOffHeapSize() == 1
+        cache.getOffHeapBytes() > 0
+        when:
+        def value = cache.get("a")
+        then:
+        value == "A"
+        cache.getOffHeapHits() == 1
+        cache.getSize() == 2
+        cache.getOffHeapSize() == 1
+        when:
+        cache.remove("b")
+        cache.remove("c")
+        then:
+        !cache.contains("b")
+        !cache.contains("c")
+    }
+
+    def "entries in the off heap tier expire and are reported per tier"() {
+        given:
+        def cache = CacheManager.createCache("off-heap-expiry-test")
+        cache.get("warmup")
+        cache.data = CacheBuilder.newBuilder().maximumSize(1).removalListener(cache).build()
+        cache.offHeap = cache.createOffHeapStore(4 * 1024 * 1024)
+        cache.timeToLive = 60 * 60 * 1000
+        when:
+        cache.put("a", "A")
+        cache.put("b", "B")
+        cache.get("a")
+        then:
+        cache.getStats().getOffHeapHitCount() == 1
+        cache.getStats().getHeapHitCount() == 0
+        cache.getContents().find { it.getKey() == "a" }.getOffHeapHits() == 1
+        cache.getContents().find { it.getKey() == "b" }.isOffHeap()
+        when:
+        def expired = cache.expireEntries(System.currentTimeMillis() + 2 * 60 * 60 * 1000)
+        then:
+        expired == 2
+        cache.getOffHeapSize() == 0
+        cache.getOffHeapBytes() == 0
+        cache.getStats().getEvictionCount(EvictionCause.EXPIRED) == 2
+    }
+
+    def "entries evicted from the off heap tier are counted and reported to the removal listener"() {
+        given:
+        def cache = CacheManager.createCache("off-heap-eviction-test")
+        cache.get("warmup")
+        cache.data = CacheBuilder.newBuilder().maximumSize(1).removalListener(cache).build()
+        cache.offHeap = cache.createOffHeapStore(4 * 1024)
+        def removed = Collections.synchronizedList([])
+        cache.onRemove({ removed << it } as Callback)
+        def value = "x" * 600
+        when:
+        (1..6).each { cache.put("key" + it, value + it) }
+        then:
+        cache.getOffHeapSize() < 5
+        cache.getStats().getEvictionCount(EvictionCause.SIZE) == 5 - cache.getOffHeapSize()
+        removed.size() == 5 - cache.getOffHeapSize()
+        removed.every { !cache.contains(it.first) && it.second == value + it.first.substring(3) }
+    }
+
+    def "caches with a weigher are limited by the total weight of their entries"() {
+        given:
+        def cache = CacheManager.createCache("weight-test", null, null, { key, value ->
+            return value.length()
+        } as Weigher)
+        when:
+        cache.put("a", "1234")
+        cache.put("b", "1234")
+        then:
+        cache.getMaxWeight() == 10
+        cache.getWeight() == 8
+        when:
+        cache.put("c", "1234")
+        then:
+        cache.getSize() == 2
+        cache.getWeight() == 8
+        when:
+        cache.put("c", "12")
+        then:
+        cache.getWeight() == 6
+    }
+
+    def "invalidateTag removes all entries carrying the tag"() {
+        given:
+        def cache = CacheManager.createCache("tag-test", new TaggingValueComputer<String, String>() {
+            @Override
+            String compute(String key) {
+                return key.toUpperCase()
+            }
+
+            @Override
+            Collection<String> getTags(String key, String value) {
+                return ["computed"]
+            }
+        }, null)
+        when:
+        cache.put("a", "A", ["tenant-1"])
+        cache.put("b", "B", ["tenant-1", "tenant-2"])
+        cache.put("c", "C", ["tenant-2"])
+        cache.get("d")
+        and:
+        cache.invalidateTag("tenant-1")
+        then:
+        !cache.contains("a")
+        !cache.contains("b")
+        cache.contains("c")
+        cache.contains("d")
+        cache.tagIndex.get("tenant-2") == ["c"] as Set
+        when:
+        cache.put("c", "C2", ["tenant-3"])
+        cache.invalidateTag("computed")
+        then:
+        !cache.contains("d")
+        !cache.tagIndex.containsKey("tenant-2")
+        cache.tagIndex.get("tenant-3") == ["c"] as Set
+    }
+
+    def "invalidations are exchanged with other nodes via the invalidation bus"() {
+        given:
+        def loopback = Injector.context().getPart("loopback", InvalidationTransport.class)
+        def otherNode = new InvalidationBus()
+        otherNode.transport = loopback
+        loopback.subscribe(otherNode.receiver)
+        and:
+        def cache = CacheManager.createCache("coherence-test")
+        cache.put("a", "A")
+        cache.put(1, "B")
+        cache.put("c", "C", ["tag"])
+        cache.put("d", "D")
+        when:
+        otherNode.publish(new InvalidationBus.Invalidation("coherence-test", InvalidationBus.Operation.REMOVE, "a"))
+        otherNode.publish(new InvalidationBus.Invalidation("coherence-test", InvalidationBus.Operation.REMOVE, 1))
+        otherNode.publish(new InvalidationBus.Invalidation("coherence-test", InvalidationBus.Operation.TAG, "tag"))
+        def deadline = System.currentTimeMillis() + 2000
+        while (otherNode.getInvalidationsSent() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        then:
+        !cache.contains("a")
+        !cache.contains(1)
+        !cache.contains("c")
+        cache.contains("d")
+        otherNode.getMessagesSent() <= 3
+        when:
+        cache.remove("d")
+        deadline = System.currentTimeMillis() + 2000
+        while (otherNode.getInvalidationsReceived() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        then:
+        !cache.contains("d")
+        otherNode.getInvalidationsReceived() == 1
+        cleanup:
+        loopback.unsubscribe(otherNode.receiver)
+    }
+
+    def "removing a key which is neither a string nor a number clears the cache on other nodes"() {
+        given:
+        def loopback = Injector.context().getPart("loopback", InvalidationTransport.class)
+        def otherNode = new InvalidationBus()
+        otherNode.transport = loopback
+        loopback.subscribe(otherNode.receiver)
+        and:
+        def cache = CacheManager.createCache("coherence-object-test")
+        cache.put(["a"], "A")
+        cache.put("b", "B")
+        when:
+        otherNode.publish(new InvalidationBus.Invalidation("coherence-object-test",
+                                                           InvalidationBus.Operation.REMOVE,
+                                                           ["a"]))
+        def deadline = System.currentTimeMillis() + 2000
+        while (otherNode.getInvalidationsSent() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        then:
+        !cache.contains(["a"])
+        !cache.contains("b")
+        cleanup:
+        loopback.unsubscribe(otherNode.receiver)
+    }
+
+    def "only outdated entries are evicted, limited by the eviction budget"() {
+        given:
+        def cache = CacheManager.createCache("expiry-test")
+        cache.put("a", "A")
+        cache.put("b", "B")
+        cache.put("c", "C")
+        cache.timeToLive = 10 * 60 * 60 * 1000
+        cache.put("live", "L")
+        cache.put("c", "C2")
+        cache.evictionBudget = 2
+        def inTwoHours = System.currentTimeMillis() + 2 * 60 * 60 * 1000
+        when:
+        cache.runEviction()
+        then:
+        cache.getSize() == 4
+        when:
+        def first = cache.expireEntries(inTwoHours)
+        def second = cache.expireEntries(inTwoHours)
+        then:
+        first + second == 2
+        !cache.contains("a")
+        !cache.contains("b")
+        cache.contains("c")
+        cache.contains("live")
+        cache.expiryQueue.size() == 2
+    }
+
+    def "an expired inline cache is recomputed by one thread while all others get the previous value"() {
+        given:
+        def computations = new AtomicInteger()
+        def release = new CountDownLatch(1)
+        def cache = CacheManager.createInlineCache(50, TimeUnit.MILLISECONDS, {
+            def result = computations.incrementAndGet()
+            if (result == 2) {
+                release.await(5, TimeUnit.SECONDS)
+            }
+            return result
+        } as ValueProvider)
+        def pool = Executors.newFixedThreadPool(4)
+        when:
+        def initial = cache.get()
+        Thread.sleep(100)
+        def recompute = pool.submit({ cache.get() } as Callable)
+        def deadline = System.currentTimeMillis() + 2000
+        while (computations.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        def others = (1..3).collect { pool.submit({ cache.get() } as Callable) }.collect { it.get(5, TimeUnit.SECONDS) }
+        release.countDown()
+        then:
+        initial == 1
+        others == [1, 1, 1]
+        recompute.get(5, TimeUnit.SECONDS) == 2
+        cache.get() == 2
+        computations.get() == 2
+        cache.getRecomputations() == 2
+        when:
+        cache.hardExpireAfter(100, TimeUnit.MILLISECONDS)
+        Thread.sleep(150)
+        then:
+        cache.get() == 3
+        cleanup:
+        pool.shutdown()
+    }
+
+    def "a dropped asynchronous recompute of an inline cache is re-attempted by the next caller"() {
+        given:
+        def computations = new AtomicInteger()
+        def cache = CacheManager.createInlineCache(50, TimeUnit.MILLISECONDS, {
+            computations.incrementAndGet()
+        } as ValueProvider).recomputeAsync("pipeline-overload").hardExpireAfter(200, TimeUnit.MILLISECONDS)
+        def release = new CountDownLatch(1)
+        def blockers = (1..2).collect {
+            Async.executor("pipeline-overload").fork({ release.await(5, TimeUnit.SECONDS) } as Runnable).execute()
+        }
+        when:
+        def initial = cache.get()
+        Thread.sleep(100)
+        def stale = cache.get()
+        Thread.sleep(150)
+        def caller = Executors.newSingleThreadExecutor()
+        def recomputed = caller.submit({ cache.get() } as Callable)
+        then:
+        initial == 1
+        stale == 1
+        cache.inFlight.get() == null
+        recomputed.get(5, TimeUnit.SECONDS) == 2
+        cleanup:
+        release.countDown()
+        blockers.each { it.await(Duration.ofSeconds(5)) }
+        caller.shutdown()
+    }
+
+    def "statistics record loads and evictions by cause"() {
+        given:
+        def valid = true
+        def cache = CacheManager.createCache("stats-test", { key ->
+            if (key == "fail") {
+                throw new IllegalArgumentException("cannot compute")
+            }
+            return key.toUpperCase()
+        } as ValueComputer, { value -> valid } as ValueVerifier)
+        when:
+        cache.get("a")
+        cache.get("a")
+        cache.get("b")
+        cache.get("c")
+        try {
+            cache.get("fail")
+        } catch (Exception e) {
+        }
+        cache.remove("a")
+        cache.timeToLive = 1
+        cache.put("c", "C2")
+        cache.timeToLive = 60 * 60 * 1000
+        and:
+        cache.getContents().find { it.getKey() == "b" }.nextVerification = 0
+        valid = false
+        cache.get("b")
+        and:
+        cache.expireEntries(System.currentTimeMillis() + 5000)
+        def stats = cache.getStats()
+        then:
+        stats.getHitCount() == 1
+        stats.getMissCount() == 5
+        stats.getLoadSuccessCount() == 4
+        stats.getLoadFailureCount() == 1
+        stats.getEvictionCount(EvictionCause.EXPLICIT) == 1
+        stats.getEvictionCount(EvictionCause.REPLACED) == 1
+        stats.getEvictionCount(EvictionCause.VERIFICATION) == 1
+        stats.getEvictionCount(EvictionCause.EXPIRED) == 1
+        stats.getEvictionCount() == 3
+        cache.getSize() == 1
+        when:
+        cache.runEviction()
+        then:
+        cache.getUses() == 0
+        cache.getStats().minus(stats).getRequestCount() == 0
+        cache.getStats().getRequestCount() == 6
+    }
+
+}
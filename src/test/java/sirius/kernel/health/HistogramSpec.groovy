@@ -0,0 +1,36 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.health
+
+import sirius.kernel.BaseSpecification
+
+class HistogramSpec extends BaseSpecification {
+
+    def "percentiles are estimated by the upper bound of their bucket"() {
+        given:
+        def histogram = new Histogram()
+        when:
+        (1..90).each { histogram.add(3) }
+        (1..9).each { histogram.add(100) }
+        histogram.add(1000)
+        then:
+        histogram.getCount() == 100
+        histogram.getSum() == 90 * 3 + 9 * 100 + 1000
+        histogram.getMax() == 1000
+        histogram.getPercentile(50) == 3
+        histogram.getPercentile(95) == 127
+        histogram.getPercentile(100) == 1000
+        when:
+        histogram.reset()
+        then:
+        histogram.getCount() == 0
+        histogram.getPercentile(95) == 0
+    }
+
+}
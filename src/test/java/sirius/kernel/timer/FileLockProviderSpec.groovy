@@ -0,0 +1,85 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer
+
+import sirius.kernel.BaseSpecification
+
+import java.nio.file.Files
+import java.time.Duration
+import java.util.concurrent.Executors
+
+class FileLockProviderSpec extends BaseSpecification {
+
+    def "a lease is only granted to one owner and the fencing token grows with each new owner"() {
+        given:
+        def provider = new FileLockProvider()
+        provider.directory = Files.createTempDirectory("locks").toString()
+        when:
+        def first = provider.tryAcquire("cleanup", "node1", Duration.ofMinutes(1))
+        def rejected = provider.tryAcquire("cleanup", "node2", Duration.ofMinutes(1))
+        def renewed = provider.tryAcquire("cleanup", "node1", Duration.ofMinutes(1))
+        provider.release(renewed)
+        def second = provider.tryAcquire("cleanup", "node2", Duration.ofMinutes(1))
+        def expired = provider.tryAcquire("other", "node1", Duration.ZERO)
+        def takeover = provider.tryAcquire("other", "node2", Duration.ofMinutes(1))
+        then:
+        first.getFencingToken() == 1
+        rejected == null
+        renewed.getFencingToken() == 1
+        second.getOwner() == "node2"
+        second.getFencingToken() == 2
+        expired.getFencingToken() == 1
+        takeover.getFencingToken() == 2
+    }
+
+    def "the lease of a timer is renewed while it runs longer than the lease duration"() {
+        given:
+        def provider = new FileLockProvider()
+        provider.directory = Files.createTempDirectory("locks").toString()
+        def timerService = new TimerService()
+        timerService.lockProvider = provider
+        timerService.owner = "node1"
+        timerService.leaseDuration = Duration.ofMillis(300)
+        timerService.scheduler = Executors.newSingleThreadScheduledExecutor()
+        def leaseAtEnd = null
+        def task = new ClusterTimer(onRun: {
+            Thread.sleep(1000)
+            leaseAtEnd = TimerService.getCurrentLease().orElse(null)
+        })
+        def info = new TimerInfo(EveryMinute.class, task, Schedule.every(Duration.ofMinutes(1)), Duration.ZERO, null)
+        when:
+        timerService.runTimer(info, System.currentTimeMillis())
+        def takeover = provider.tryAcquire("cluster-cleanup", "node2", Duration.ofMinutes(1))
+        then:
+        leaseAtEnd != null
+        leaseAtEnd.getFencingToken() == 1
+        takeover == null
+        cleanup:
+        timerService.scheduler.shutdownNow()
+    }
+
+    def "a timer marked as once per cluster uses its lock name"() {
+        given:
+        def schedule = Schedule.every(Duration.ofMinutes(1))
+        expect:
+        new TimerInfo(EveryMinute.class, new ClusterTimer(), schedule, Duration.ZERO, null).getLockName() ==
+                "cluster-cleanup"
+        !new TimerInfo(EveryMinute.class, {} as TimedTask, schedule, Duration.ZERO, null).isOncePerCluster()
+    }
+
+    @OncePerCluster("cluster-cleanup")
+    static class ClusterTimer implements TimedTask {
+        Closure onRun = {}
+
+        @Override
+        void runTimer() throws Exception {
+            onRun()
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer
+
+import sirius.kernel.BaseSpecification
+
+import java.time.Duration
+import java.time.LocalDateTime
+import java.time.ZoneId
+
+class ScheduleSpec extends BaseSpecification {
+
+    def millis(String time) {
+        return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+    }
+
+    def "fixed rate schedules are aligned to the wall clock"() {
+        expect:
+        Schedule.every(Duration.ofMinutes(10)).nextExecution(millis(after)) == millis(next)
+        where:
+        after                     | next
+        "2015-01-12T10:07:13"     | "2015-01-12T10:10:00"
+        "2015-01-12T10:10:00"     | "2015-01-12T10:20:00"
+        "2015-01-12T23:55:00.001" | "2015-01-13T00:00:00"
+    }
+
+    def "cron expressions are evaluated"() {
+        expect:
+        Schedule.parse(expression).nextExecution(millis(after)) == millis(next)
+        where:
+        expression       | after                 | next
+        "30 2 * * *"     | "2015-01-12T10:07:13" | "2015-01-13T02:30:00"
+        "*/15 * * * *"   | "2015-01-12T10:07:13" | "2015-01-12T10:15:00"
+        "0 9-17 * * 1-5" | "2015-01-16T17:00:00" | "2015-01-19T09:00:00"
+        "0 0 1 */3 *"    | "2015-01-12T10:07:13" | "2015-04-01T00:00:00"
+        "0 0 13 * 5"     | "2015-01-12T10:07:13" | "2015-01-13T00:00:00"
+        "0 0 29 2 *"     | "2015-03-01T00:00:00" | "2016-02-29T00:00:00"
+    }
+
+    def "impossible cron expressions never fire"() {
+        expect:
+        Schedule.parse("0 0 31 2 *").nextExecution(millis("2015-01-12T10:07:13")) == -1
+    }
+
+    def "malformed cron expressions are rejected"() {
+        when:
+        Schedule.parse(expression)
+        then:
+        thrown(IllegalArgumentException)
+        where:
+        expression << ["* * * *", "60 * * * *", "5-1 * * * *", "*/0 * * * *", "a * * * *"]
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer
+
+import sirius.kernel.BaseSpecification
+
+import java.time.Duration
+
+class TimerInfoSpec extends BaseSpecification {
+
+    def "a timer skips executions while its previous execution is running"() {
+        given:
+        def info = new TimerInfo(EveryMinute.class,
+                                 {} as TimedTask,
+                                 Schedule.every(Duration.ofMinutes(1)),
+                                 Duration.ZERO,
+                                 null)
+        when:
+        def first = info.tryStart()
+        info.executed(System.currentTimeMillis(), 25)
+        def second = info.tryStart()
+        info.completed(100)
+        def third = info.tryStart()
+        then:
+        first
+        !second
+        third
+        info.isRunning()
+        info.getExecutions() == 1
+        info.getSkipped() == 1
+        info.getLastDuration() == 100
+        info.getAverageLateness() == 25d
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Made with all the love in the world
+ * by scireum in Remshalden, Germany
+ *
+ * Copyright by scireum GmbH
+ * http://www.scireum.de - info@scireum.de
+ */
+
+package sirius.kernel.timer
+
+import sirius.kernel.BaseSpecification
+import sirius.kernel.di.PartCollection
+
+import java.nio.file.Files
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class TimerServiceSpec extends BaseSpecification {
+
+    def "a watched resource is reloaded once after it was changed"() {
+        given:
+        def timerService = new TimerService()
+        def file = Files.createTempDirectory("watch").resolve("test.properties").toFile()
+        file.text = "a=1"
+        def reloads = new AtomicInteger()
+        def firstReload = new CountDownLatch(1)
+        when:
+        timerService.addWatchedResource(file.toURI().toURL(), {
+            reloads.incrementAndGet()
+            firstReload.countDown()
+        } as Runnable)
+        timerService.startResourceWatcher()
+        file.text = "a=2"
+        file.setLastModified(System.currentTimeMillis() + 5000)
+        def reloaded = firstReload.await(10, TimeUnit.SECONDS)
+        // A second reload would be due after another debounce interval...
+        Thread.sleep(2 * TimerService.DEBOUNCE_INTERVAL)
+        then:
+        reloaded
+        timerService.watchedDirectories.size() == 1
+        timerService.polledFiles.isEmpty()
+        reloads.get() == 1
+        cleanup:
+        timerService.stopResourceWatcher()
+    }
+
+    def "a manual run is recorded by its timer and skipped while the timer is running"() {
+        given:
+        def timerService = new TimerService()
+        def release = new CountDownLatch(1)
+        def task = { release.await(5, TimeUnit.SECONDS) } as TimedTask
+        def info = new TimerInfo(EveryTenMinutes.class, task, Schedule.every(Duration.ofMinutes(10)), Duration.ZERO, null)
+        timerService.timers = [info]
+        when:
+        timerService.runTenMinuteTimers()
+        timerService.runTenMinuteTimers()
+        release.countDown()
+        for (int i = 0; i < 100 && info.isRunning(); i++) {
+            Thread.sleep(50)
+        }
+        then:
+        info.getExecutions() == 1
+        info.getSkipped() == 1
+        !info.isRunning()
+    }
+
+    def "a daily timer with an invalid hour doesn't prevent other timers from being created"() {
+        given:
+        def timerService = new TimerService()
+        def minuteTask = { } as EveryMinute
+        def dailyTask = [getConfigKeyName: { "broken-daily-test" }, runTimer: { }] as EveryDay
+        timerService.everyTenSeconds = parts(EveryTenSeconds.class)
+        timerService.everyMinute = parts(EveryMinute.class, minuteTask)
+        timerService.everyTenMinutes = parts(EveryTenMinutes.class)
+        timerService.everyHour = parts(EveryHour.class)
+        timerService.everyDay = parts(EveryDay.class, dailyTask)
+        timerService.scheduledTasks = parts(ScheduledTask.class)
+        timerService.maxJitter = Duration.ZERO
+        when:
+        def timers = timerService.createTimers()
+        then:
+        timers.size() == 1
+        timers[0].getTask().is(minuteTask)
+    }
+
+    private static <P> PartCollection<P> parts(Class<P> type, P... parts) {
+        return [getInterface: { type }, getParts: { Arrays.asList(parts) }, iterator: {
+            Arrays.asList(parts).iterator()
+        }] as PartCollection<P>
+    }
+}